@@ -0,0 +1,213 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.LineString;
+import com.mapbox.geojson.Point;
+
+import java.awt.geom.Line2D;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Fixtures builds fixed benchmark inputs without a web server or database. The points of the bundled flight
+ * drone-01-01-2022.geojson are used as the positions of shops, pick up points and landmarks, and the no fly zones
+ * are random rectangles placed where the bundled flight doesn't go, so every fixture is a plausible day.
+ * The same seed always gives the same fixtures.
+ */
+public final class Fixtures {
+
+    /** The bundled flight the fixture positions are taken from */
+    private static final String FLIGHT_RESOURCE = "/drone-01-01-2022.geojson";
+
+    /** The number of no fly zones placed around the bundled flight */
+    private static final int NO_OF_ZONES = 6;
+
+    /** The number of shops the synthetic orders are collected from */
+    private static final int NO_OF_SHOPS = 6;
+
+    /** The number of landmarks used to fly around the zones */
+    private static final int NO_OF_LANDMARKS = 3;
+
+    /** points of the bundled flight, without consecutive repeats */
+    public final ArrayList<LongLat> flight = new ArrayList<>();
+
+    /** the edges of every no fly zone */
+    public final ArrayList<ArrayList<Line2D>> zones = new ArrayList<>();
+
+    /** the no fly zones, indexed */
+    public final NoFlyZoneIndex noFlyZones;
+
+    /** landmark coords, taken from the flight */
+    public final ArrayList<LongLat> landmarks = new ArrayList<>();
+
+    /** shop coords, taken from the flight */
+    public final ArrayList<LongLat> shops = new ArrayList<>();
+
+    /** the planning inputs of the fixture drones */
+    public final PlanningContext context;
+
+    /** seed of the random choices */
+    private final long seed;
+
+    /** random source of the fixtures */
+    private final Random random;
+
+    /**
+     * constructor Fixtures
+     * @param seed - seed of the random choices, the same seed gives the same fixtures
+     */
+    public Fixtures(long seed) {
+        this.seed = seed;
+        random = new Random(seed);
+        readFlight();
+        for (int i = 0; i < NO_OF_SHOPS; i++) {
+            shops.add(randomFlightPoint());
+        }
+        for (int i = 0; i < NO_OF_LANDMARKS; i++) {
+            landmarks.add(randomFlightPoint());
+        }
+        placeZones();
+        noFlyZones = new NoFlyZoneIndex(zones);
+        try {
+            Path store = Files.createTempFile("words-cache", ".csv");
+            store.toFile().deleteOnExit();
+            context = new PlanningContext(new WebServer("0"), new Menus("0"), noFlyZones, landmarks,
+                    new WordCache("0", store));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * read the points of the bundled flight
+     */
+    private void readFlight() {
+        try (InputStream in = Objects.requireNonNull(Fixtures.class.getResourceAsStream(FLIGHT_RESOURCE))) {
+            FeatureCollection fc = FeatureCollection.fromJson(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            LineString line = (LineString) Objects.requireNonNull(fc.features()).get(0).geometry();
+            for (Point point : Objects.requireNonNull(line).coordinates()) {
+                LongLat longLat = new LongLat(point.longitude(), point.latitude());
+                if (flight.isEmpty() || flight.get(flight.size() - 1).distanceTo(longLat) > 0) {
+                    flight.add(longLat);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * place rectangular no fly zones that neither the bundled flight nor any fixture point is in conflict with
+     */
+    private void placeZones() {
+        int attempts = 0;
+        while (zones.size() < NO_OF_ZONES && attempts++ < 10_000) {
+            double lng = -3.192 + random.nextDouble() * 0.0075;
+            double lat = 55.9428 + random.nextDouble() * 0.0032;
+            double halfWidth = 0.0001 + random.nextDouble() * 0.0004;
+            double halfHeight = 0.0001 + random.nextDouble() * 0.0002;
+            ArrayList<Line2D> zone = rectangle(lng - halfWidth, lat - halfHeight, lng + halfWidth, lat + halfHeight);
+            NoFlyZoneIndex single = new NoFlyZoneIndex(List.of(zone));
+            boolean clear = true;
+            for (int i = 0; i + 1 < flight.size() && clear; i++) {
+                clear = !single.intersects(flight.get(i).longitude, flight.get(i).latitude,
+                        flight.get(i + 1).longitude, flight.get(i + 1).latitude);
+            }
+            for (LongLat point : allPoints()) {
+                clear = clear && (Math.abs(point.longitude - lng) > halfWidth || Math.abs(point.latitude - lat) > halfHeight);
+            }
+            if (clear) {
+                zones.add(zone);
+            }
+        }
+    }
+
+    /**
+     * @return ArrayList<LongLat> home, the shops and the landmarks
+     */
+    private ArrayList<LongLat> allPoints() {
+        ArrayList<LongLat> points = new ArrayList<>(shops);
+        points.addAll(landmarks);
+        points.add(new LongLat(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE));
+        return points;
+    }
+
+    /**
+     * @return the four edges of the rectangle
+     */
+    private static ArrayList<Line2D> rectangle(double west, double south, double east, double north) {
+        ArrayList<Line2D> edges = new ArrayList<>();
+        edges.add(new Line2D.Double(west, south, east, south));
+        edges.add(new Line2D.Double(east, south, east, north));
+        edges.add(new Line2D.Double(east, north, west, north));
+        edges.add(new Line2D.Double(west, north, west, south));
+        return edges;
+    }
+
+    /**
+     * @return a copy of a random point of the bundled flight
+     */
+    public LongLat randomFlightPoint() {
+        return randomFlightPoint(random);
+    }
+
+    /**
+     * @return a copy of a point of the bundled flight chosen by the given random source
+     */
+    private LongLat randomFlightPoint(Random choice) {
+        LongLat point = flight.get(choice.nextInt(flight.size()));
+        return new LongLat(point.longitude, point.latitude);
+    }
+
+    /**
+     * Create synthetic orders with their shops, pick up points and routes already resolved, the way
+     * Drone.getVisitingLongLat leaves them. The same count always gives the same orders, as new objects.
+     * @param count - number of orders
+     * @return ArrayList<Order> the orders
+     */
+    public ArrayList<Order> orders(int count) {
+        Random random = new Random(seed + count);
+        ArrayList<Order> orders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Order order = new Order(String.format("%08x", i), "2022-01-01", "s0000000", "pick.up.point",
+                    new ArrayList<>(), 500 + random.nextInt(2500));
+            order.route = new ArrayList<>();
+            int noOfShops = 1 + random.nextInt(2);
+            LongLat previous = null;
+            double distance = 0;
+            for (int s = 0; s < noOfShops; s++) {
+                LongLat original = shops.get(random.nextInt(shops.size()));
+                LongLat shop = new LongLat(original.longitude, original.latitude);
+                order.route.add(shop);
+                order.route.add(shop);
+                distance += previous == null ? 0 : previous.distanceTo(shop);
+                previous = shop;
+            }
+            LongLat pickUp = randomFlightPoint(random);
+            order.route.add(pickUp);
+            order.route.add(pickUp);
+            order.pickUp = pickUp;
+            order.totalDeliveryDistance = distance + pickUp.distanceTo(previous);
+            order.pricePerDistance = (int) Math.round(order.price / Math.max(order.totalDeliveryDistance, 1e-9));
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    /**
+     * Create a drone planning the given orders over these fixtures, with no web server and no database
+     * @param orders - the orders to deliver
+     * @return Drone ready for its planning phases
+     */
+    public Drone drone(ArrayList<Order> orders) {
+        return new Drone(context, null, orders);
+    }
+}
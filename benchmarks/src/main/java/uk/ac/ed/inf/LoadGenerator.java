@@ -0,0 +1,328 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * LoadGenerator makes up a synthetic world and the orders of synthetic days for the load harness. The world is a
+ * number of three word locations spread over the confinement area, shops at some of them with their own menus,
+ * landmarks, and random convex no fly zones that keep clear of every location, of the landmarks and of Appleton
+ * Tower. Every day has its own orders, each collected from one or two random shops with a few of their items and
+ * delivered to a random location. It renders the world as the web server's files and inserts the orders into the
+ * orders and orderDetails tables. The same seed always gives the same world and the same days.
+ */
+public final class LoadGenerator {
+
+    /** The number of items on every shop's menu */
+    private static final int ITEMS_PER_SHOP = 6;
+
+    /** The most items of a single order */
+    private static final int MAX_ITEMS_PER_ORDER = 4;
+
+    /** The number of landmarks used to fly around the zones */
+    private static final int NO_OF_LANDMARKS = 4;
+
+    /** The smallest distance between a no fly zone and any location, in degrees */
+    private static final double ZONE_CLEARANCE = 0.0002;
+
+    /** The words three word locations are made of, short enough for the 19 characters of deliverTo */
+    private static final String[] WORDS = {"apple", "brick", "cloud", "drift", "ember", "fable", "grape", "haven",
+            "ivory", "jolly", "kite", "lemon", "maple", "noble", "otter", "pearl", "quilt", "raven", "stone",
+            "tulip", "umber", "vivid", "wheat", "yacht"};
+
+    /**
+     * A three word location of the world
+     */
+    public static final class Location {
+
+        /** the three words, e.g. apple.brick.cloud */
+        public final String words;
+
+        /** where it is */
+        public final LongLat longLat;
+
+        Location(String words, LongLat longLat) {
+            this.words = words;
+            this.longLat = longLat;
+        }
+    }
+
+    /**
+     * A synthetic order with the items ordered
+     */
+    public static final class SyntheticOrder {
+
+        /** the order number, 8 hex digits */
+        public final String orderNo;
+
+        /** the customer's matriculation number */
+        public final String customer;
+
+        /** the three words of the pick up point */
+        public final String deliverTo;
+
+        /** names of the items ordered */
+        public final List<String> items;
+
+        SyntheticOrder(String orderNo, String customer, String deliverTo, List<String> items) {
+            this.orderNo = orderNo;
+            this.customer = customer;
+            this.deliverTo = deliverTo;
+            this.items = items;
+        }
+    }
+
+    /** every three word location, the shops first */
+    public final ArrayList<Location> locations = new ArrayList<>();
+
+    /** the items on the menu of every shop, shop i is at locations.get(i) */
+    public final ArrayList<ArrayList<String>> menus = new ArrayList<>();
+
+    /** the price of every item, in pence */
+    public final HashMap<String, Integer> prices = new HashMap<>();
+
+    /** landmark coords, used to fly around the zones */
+    public final ArrayList<LongLat> landmarks = new ArrayList<>();
+
+    /** the corners of every no fly zone */
+    public final ArrayList<ArrayList<LongLat>> zones = new ArrayList<>();
+
+    /** seed of the random choices */
+    private final long seed;
+
+    /**
+     * constructor LoadGenerator, making up the world
+     * @param seed - seed of the random choices, the same seed gives the same world
+     * @param noOfLocations - number of three word locations, including the shops
+     * @param noOfShops - number of shops
+     * @param noOfZones - number of no fly zones
+     */
+    public LoadGenerator(long seed, int noOfLocations, int noOfShops, int noOfZones) {
+        if (noOfShops < 1 || noOfLocations < noOfShops) {
+            throw new IllegalArgumentException(noOfShops + " shops at " + noOfLocations + " locations");
+        }
+        this.seed = seed;
+        Random random = new Random(seed);
+        LinkedHashSet<String> names = new LinkedHashSet<>();
+        while (names.size() < noOfLocations) {
+            names.add(WORDS[random.nextInt(WORDS.length)] + "." + WORDS[random.nextInt(WORDS.length)] + "."
+                    + WORDS[random.nextInt(WORDS.length)]);
+        }
+        for (String name : names) {
+            locations.add(new Location(name, randomPoint(random)));
+        }
+        for (int s = 0; s < noOfShops; s++) {
+            ArrayList<String> menu = new ArrayList<>();
+            for (int i = 0; i < ITEMS_PER_SHOP; i++) {
+                String item = "Item " + s + "-" + i;
+                menu.add(item);
+                prices.put(item, 100 + random.nextInt(900));
+            }
+            menus.add(menu);
+        }
+        for (int i = 0; i < NO_OF_LANDMARKS; i++) {
+            landmarks.add(randomPoint(random));
+        }
+        placeZones(random, noOfZones);
+    }
+
+    /**
+     * @return a random point well inside the confinement area
+     */
+    private static LongLat randomPoint(Random random) {
+        double margin = 2 * LongLat.DISTANCE_TOLERANCE;
+        double longitude = LongLat.WESTMOST_LONGITUDE + margin
+                + random.nextDouble() * (LongLat.EASTMOST_LONGITUDE - LongLat.WESTMOST_LONGITUDE - 2 * margin);
+        double latitude = LongLat.SOUTHMOST_LATITUDE + margin
+                + random.nextDouble() * (LongLat.NORTHMOST_LATITUDE - LongLat.SOUTHMOST_LATITUDE - 2 * margin);
+        return new LongLat(longitude, latitude);
+    }
+
+    /**
+     * place convex no fly zones of 4 to 6 corners, each clear of every location, landmark and Appleton Tower
+     */
+    private void placeZones(Random random, int noOfZones) {
+        ArrayList<LongLat> keepClear = new ArrayList<>(landmarks);
+        for (Location location : locations) {
+            keepClear.add(location.longLat);
+        }
+        keepClear.add(new LongLat(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE));
+        int attempts = 0;
+        while (zones.size() < noOfZones && attempts++ < 100_000) {
+            LongLat centre = randomPoint(random);
+            double radius = 0.0001 + random.nextDouble() * 0.0003;
+            boolean clear = true;
+            for (LongLat point : keepClear) {
+                clear = clear && point.distanceTo(centre) > radius + ZONE_CLEARANCE;
+            }
+            if (!clear) {
+                continue;
+            }
+            int corners = 4 + random.nextInt(3);
+            double rotation = random.nextDouble() * 2 * Math.PI;
+            ArrayList<LongLat> zone = new ArrayList<>();
+            for (int c = 0; c < corners; c++) {
+                double angle = rotation + 2 * Math.PI * c / corners;
+                zone.add(new LongLat(centre.longitude + radius * Math.cos(angle),
+                        centre.latitude + radius * Math.sin(angle)));
+            }
+            zones.add(zone);
+        }
+    }
+
+    /**
+     * Make up the orders of a day. The same date always gives the same orders.
+     * @param date - the delivery date
+     * @param count - number of orders
+     * @return ArrayList<SyntheticOrder> the orders
+     */
+    public ArrayList<SyntheticOrder> orders(LocalDate date, int count) {
+        Random random = new Random(seed ^ date.toEpochDay() * 0x9E3779B97F4A7C15L);
+        ArrayList<SyntheticOrder> orders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ArrayList<String> items = new ArrayList<>();
+            int firstShop = random.nextInt(menus.size());
+            int secondShop = random.nextInt(3) == 0 ? random.nextInt(menus.size()) : firstShop;
+            int noOfItems = 1 + random.nextInt(MAX_ITEMS_PER_ORDER);
+            for (int n = 0; n < noOfItems; n++) {
+                ArrayList<String> menu = menus.get(n % 2 == 0 ? firstShop : secondShop);
+                items.add(menu.get(random.nextInt(menu.size())));
+            }
+            String orderNo = String.format("%08x", (date.toEpochDay() % 0x1000) << 20 | i);
+            String customer = String.format("s%07d", random.nextInt(10_000_000));
+            String deliverTo = locations.get(random.nextInt(locations.size())).words;
+            orders.add(new SyntheticOrder(orderNo, customer, deliverTo, items));
+        }
+        return orders;
+    }
+
+    /**
+     * create the orders and orderDetails tables, replacing any that are there
+     * @param connection - connection to the database
+     */
+    public static void createOrderTables(Connection connection) throws SQLException {
+        for (String table : new String[]{"ORDERS", "ORDERDETAILS"}) {
+            try (ResultSet resultSet = connection.getMetaData().getTables(null, null, table, null)) {
+                if (resultSet.next()) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("drop table " + table);
+                    }
+                }
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table orders(orderNo char(8), deliveryDate date, customer char(8), "
+                    + "deliverTo varchar(19))");
+            statement.execute("create table orderDetails(orderNo char(8), item varchar(58))");
+        }
+    }
+
+    /**
+     * insert the orders of a day into the orders and orderDetails tables, in batches
+     * @param connection - connection to the database
+     * @param date - the delivery date
+     * @param orders - the orders of the day
+     */
+    public static void insertOrders(Connection connection, LocalDate date, List<SyntheticOrder> orders)
+            throws SQLException {
+        try (PreparedStatement order = connection.prepareStatement("insert into orders values (?, ?, ?, ?)");
+             PreparedStatement detail = connection.prepareStatement("insert into orderDetails values (?, ?)")) {
+            for (SyntheticOrder o : orders) {
+                order.setString(1, o.orderNo);
+                order.setDate(2, Date.valueOf(date));
+                order.setString(3, o.customer);
+                order.setString(4, o.deliverTo);
+                order.addBatch();
+                for (String item : o.items) {
+                    detail.setString(1, o.orderNo);
+                    detail.setString(2, item);
+                    detail.addBatch();
+                }
+            }
+            order.executeBatch();
+            detail.executeBatch();
+        }
+    }
+
+    /**
+     * render the world as the files of the web server, keyed by their path
+     * @return Map<String, byte[]> the body of /menus/menus.json, /buildings/no-fly-zones.geojson,
+     * /buildings/landmarks.geojson and /words/w1/w2/w3/details.json of every location
+     */
+    public Map<String, byte[]> webFiles() {
+        HashMap<String, byte[]> files = new HashMap<>();
+        JsonArray shops = new JsonArray();
+        for (int s = 0; s < menus.size(); s++) {
+            JsonObject shop = new JsonObject();
+            shop.addProperty("name", "Shop " + s);
+            shop.addProperty("location", locations.get(s).words);
+            JsonArray menu = new JsonArray();
+            for (String item : menus.get(s)) {
+                JsonObject entry = new JsonObject();
+                entry.addProperty("item", item);
+                entry.addProperty("pence", prices.get(item));
+                menu.add(entry);
+            }
+            shop.add("menu", menu);
+            shops.add(shop);
+        }
+        files.put("/menus/menus.json", bytes(shops.toString()));
+
+        ArrayList<Feature> polygons = new ArrayList<>();
+        for (ArrayList<LongLat> zone : zones) {
+            ArrayList<Point> ring = new ArrayList<>();
+            for (LongLat corner : zone) {
+                ring.add(Point.fromLngLat(corner.longitude, corner.latitude));
+            }
+            ring.add(ring.get(0));
+            polygons.add(Feature.fromGeometry(Polygon.fromLngLats(List.of(ring))));
+        }
+        files.put("/buildings/no-fly-zones.geojson", bytes(FeatureCollection.fromFeatures(polygons).toJson()));
+
+        ArrayList<Feature> points = new ArrayList<>();
+        for (LongLat landmark : landmarks) {
+            points.add(Feature.fromGeometry(Point.fromLngLat(landmark.longitude, landmark.latitude)));
+        }
+        files.put("/buildings/landmarks.geojson", bytes(FeatureCollection.fromFeatures(points).toJson()));
+
+        for (Location location : locations) {
+            JsonObject coordinates = new JsonObject();
+            coordinates.addProperty("lng", location.longLat.longitude);
+            coordinates.addProperty("lat", location.longLat.latitude);
+            JsonObject details = new JsonObject();
+            details.addProperty("country", "GB");
+            details.addProperty("nearestPlace", "Edinburgh");
+            details.add("coordinates", coordinates);
+            details.addProperty("words", location.words);
+            details.addProperty("language", "en");
+            files.put("/words/" + location.words.replace('.', '/') + "/details.json", bytes(details.toString()));
+        }
+        return files;
+    }
+
+    /**
+     * @return the UTF-8 bytes of the text
+     */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,156 @@
+package uk.ac.ed.inf;
+
+import org.apache.derby.drda.NetworkServerControl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+/**
+ * LoadHarness runs the whole App pipeline end to end on synthetic days, without the web server or the database
+ * server: LoadGenerator makes up the world and the orders, a StubWebServer serves the world's files and an
+ * in-process Derby network server holds the orders and takes the results. Every day is planned by App.main exactly
+ * as a real run would be, and the harness reports the orders planned per second and the latency of every phase
+ * from Metrics, for sizing larger days and fleets.
+ *
+ * Usage: java -cp target/benchmarks.jar [-Dorders=2000] [-Ddays=3] [-Dwarmup=1] [-Dzones=8] [-Dlocations=150]
+ * [-Dshops=8] [-Dseed=2022] [-Ddrones=N] uk.ac.ed.inf.LoadHarness
+ * Like App it writes the geojson files, metrics files, three word and move cost caches to the working directory,
+ * so run it from an empty one.
+ */
+public class LoadHarness {
+
+    /** number of orders of every day */
+    private static final int ORDERS = Integer.getInteger("orders", 2000);
+
+    /** number of days measured */
+    private static final int DAYS = Integer.getInteger("days", 3);
+
+    /** number of days planned before the measured ones, to warm up the JIT and the caches */
+    private static final int WARMUP_DAYS = Integer.getInteger("warmup", 1);
+
+    /** number of no fly zones of the world */
+    private static final int ZONES = Integer.getInteger("zones", 8);
+
+    /** number of three word locations of the world, including the shops */
+    private static final int LOCATIONS = Integer.getInteger("locations", 150);
+
+    /** number of shops of the world */
+    private static final int SHOPS = Integer.getInteger("shops", 8);
+
+    /** seed of the world and the orders */
+    private static final long SEED = Long.getLong("seed", 2022);
+
+    /** The first synthetic day */
+    private static final LocalDate FIRST_DAY = LocalDate.of(2030, 1, 1);
+
+    /** The name of the database, as App expects it */
+    private static final String DATABASE = "derbyDB";
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator(SEED, LOCATIONS, SHOPS, ZONES);
+        Path derbyHome = Files.createTempDirectory("load-harness-derby");
+        System.setProperty("derby.system.home", derbyHome.toString());
+        int databasePort = freePort();
+        NetworkServerControl derby = new NetworkServerControl(InetAddress.getByName("localhost"), databasePort);
+        derby.start(null);
+        try (StubWebServer web = new StubWebServer(generator.webFiles())) {
+            waitFor(derby);
+            String jdbc = "jdbc:derby://localhost:" + databasePort + "/" + DATABASE;
+            try (Connection connection = DriverManager.getConnection(jdbc + ";create=true")) {
+                LoadGenerator.createOrderTables(connection);
+                for (int d = 0; d < WARMUP_DAYS + DAYS; d++) {
+                    LocalDate date = FIRST_DAY.plusDays(d);
+                    LoadGenerator.insertOrders(connection, date, generator.orders(date, ORDERS));
+                }
+            }
+            System.out.printf("world: %d locations, %d shops, %d no fly zones, %d orders a day%n",
+                    generator.locations.size(), SHOPS, generator.zones.size(), ORDERS);
+
+            ArrayList<String> lines = new ArrayList<>();
+            long measuredNanos = 0;
+            for (int d = 0; d < WARMUP_DAYS + DAYS; d++) {
+                boolean warmup = d < WARMUP_DAYS;
+                if (d == WARMUP_DAYS) {
+                    Metrics.reset();
+                }
+                LocalDate date = FIRST_DAY.plusDays(d);
+                long start = System.nanoTime();
+                App.main(new String[]{String.format("%02d", date.getDayOfMonth()),
+                        String.format("%02d", date.getMonthValue()), String.valueOf(date.getYear()),
+                        web.port(), String.valueOf(databasePort)});
+                long elapsed = System.nanoTime() - start;
+                if (!warmup) {
+                    measuredNanos += elapsed;
+                }
+                int[] delivered = deliveries(jdbc);
+                lines.add(String.format("%s%s  %6d orders  %4d delivered  %8d pence  %9.1f ms  %9.1f orders/s",
+                        date, warmup ? " (warmup)" : "         ", ORDERS, delivered[0], delivered[1],
+                        elapsed / 1e6, ORDERS / (elapsed / 1e9)));
+            }
+            lines.forEach(System.out::println);
+            if (DAYS > 0) {
+                System.out.printf("%nmeasured: %d days, %.1f orders/s end to end%n", DAYS,
+                        (double) ORDERS * DAYS / (measuredNanos / 1e9));
+                System.out.printf("%-28s %6s %12s %12s%n", "phase", "runs", "mean ms", "max ms");
+                for (Metrics.Phase phase : Metrics.Phase.values()) {
+                    long runs = Metrics.runs(phase);
+                    System.out.printf("%-28s %6d %12.3f %12.3f%n", phase.name().toLowerCase(), runs,
+                            runs == 0 ? 0 : Metrics.totalNanos(phase) / 1e6 / runs, Metrics.maxNanos(phase) / 1e6);
+                }
+                for (Metrics.Counter counter : Metrics.Counter.values()) {
+                    System.out.printf("%-28s %d%n", counter.name().toLowerCase(), Metrics.get(counter));
+                }
+            }
+        } finally {
+            derby.shutdown();
+        }
+    }
+
+    /**
+     * @return number of deliveries and their total cost in the deliveries table
+     */
+    private static int[] deliveries(String jdbc) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(jdbc);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select count(*), sum(costInPence) from deliveries")) {
+            resultSet.next();
+            return new int[]{resultSet.getInt(1), resultSet.getInt(2)};
+        }
+    }
+
+    /**
+     * @return a port of localhost nothing is listening on
+     */
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * wait until the Derby network server answers, for up to 10 seconds
+     */
+    private static void waitFor(NetworkServerControl derby) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                derby.ping();
+                return;
+            } catch (Exception e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput benchmarks of the planner hot paths, from a single LongLat move up to a full planPath run.
+ * Run them with the gc profiler (see BenchmarkRunner) to also see the allocation rate of every path.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlannerBenchmarks {
+
+    /** The seed all the fixtures are built from */
+    private static final long SEED = 2022;
+
+    /**
+     * Fixture points and segments of the small benchmarks, one copy per thread as next() moves on every call
+     */
+    @State(Scope.Thread)
+    public static class Geometry {
+
+        /** number of precomputed inputs each benchmark cycles through */
+        static final int SAMPLES = 1024;
+
+        Drone drone;
+        LongLat[] points = new LongLat[SAMPLES];
+        LongLat[] targets = new LongLat[SAMPLES];
+        LongLat[] blockedFrom = new LongLat[SAMPLES];
+        LongLat[] blockedTo = new LongLat[SAMPLES];
+        int[] angles = new int[SAMPLES];
+        int next = 0;
+
+        @Setup
+        public void setUp() {
+            Fixtures fixtures = new Fixtures(SEED);
+            drone = fixtures.drone(fixtures.orders(1));
+            for (int i = 0; i < SAMPLES; i++) {
+                points[i] = fixtures.randomFlightPoint();
+                targets[i] = fixtures.randomFlightPoint();
+                angles[i] = (i % 36) * 10;
+            }
+            // pairs whose direct line crosses a zone, so getAngle has to rotate
+            int found = 0;
+            for (int attempt = 0; found < SAMPLES && attempt < 1_000_000; attempt++) {
+                LongLat from = fixtures.randomFlightPoint();
+                LongLat to = fixtures.randomFlightPoint();
+                if (drone.isNoFlyZone(from.longitude, from.latitude, to.longitude, to.latitude)) {
+                    blockedFrom[found] = from;
+                    blockedTo[found] = to;
+                    found++;
+                }
+            }
+            for (int i = found; i < SAMPLES; i++) {
+                blockedFrom[i] = points[i];
+                blockedTo[i] = targets[i];
+            }
+        }
+
+        int next() {
+            next = (next + 1) & (SAMPLES - 1);
+            return next;
+        }
+    }
+
+    /**
+     * A drone with its orders built once, for avoidNoFlyZone which rebuilds the path itself as part of the
+     * benchmark, a setup per invocation would cost more than the operation it measures
+     */
+    @State(Scope.Thread)
+    public static class Route {
+
+        @Param({"10", "40"})
+        int orders;
+
+        Drone drone;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Fixtures fixtures = new Fixtures(SEED);
+            drone = fixtures.drone(fixtures.orders(orders));
+        }
+    }
+
+    /**
+     * A drone with its path built from synthetic orders, rebuilt before every invocation because planPath changes
+     * it; fine for planPath, which takes milliseconds
+     */
+    @State(Scope.Thread)
+    public static class Flight {
+
+        @Param({"10", "40"})
+        int orders;
+
+        Fixtures fixtures;
+        Drone drone;
+
+        @Setup(Level.Trial)
+        public void setUpTrial() {
+            fixtures = new Fixtures(SEED);
+        }
+
+        @Setup(Level.Invocation)
+        public void setUpInvocation() {
+            drone = fixtures.drone(fixtures.orders(orders));
+            drone.createLangLatPath();
+        }
+    }
+
+    @Benchmark
+    public LongLat nextPosition(Geometry g) {
+        int i = g.next();
+        return g.points[i].nextPosition(g.angles[i]);
+    }
+
+    @Benchmark
+    public double distanceTo(Geometry g) {
+        int i = g.next();
+        return g.points[i].distanceTo(g.targets[i]);
+    }
+
+    @Benchmark
+    public boolean isNoFlyZone(Geometry g) {
+        int i = g.next();
+        LongLat from = g.points[i];
+        LongLat to = from.nextPosition(g.angles[i]);
+        return g.drone.isNoFlyZone(from.longitude, from.latitude, to.longitude, to.latitude);
+    }
+
+    @Benchmark
+    public int getAngleBlocked(Geometry g) {
+        int i = g.next();
+        return g.drone.getAngle(g.blockedFrom[i], g.blockedTo[i]);
+    }
+
+    @Benchmark
+    public void avoidNoFlyZone(Route r, Blackhole blackhole) {
+        // the landmarks added by the last call have to go, rebuilding the path is part of the measurement
+        r.drone.createLangLatPath();
+        r.drone.avoidNoFlyZone();
+        blackhole.consume(r.drone.path);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void planPath(Flight f, Blackhole blackhole) {
+        f.drone.avoidNoFlyZone();
+        f.drone.planPath();
+        blackhole.consume(f.drone.flightTrace);
+    }
+}
@@ -0,0 +1,77 @@
+package uk.ac.ed.inf;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * StubWebServer stands in for the web server in the load harness: it serves fixed files, e.g. the ones rendered by
+ * LoadGenerator.webFiles(), from an in-process HTTP server on a free port of localhost, and answers 404 for any other
+ * path the way the real one does for unknown three word locations.
+ */
+public class StubWebServer implements AutoCloseable {
+
+    /** The number of threads answering requests */
+    private static final int THREADS = 8;
+
+    /** the body of every path served */
+    private final Map<String, byte[]> files;
+
+    /** the HTTP server */
+    private final HttpServer server;
+
+    /** the threads answering requests */
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    /**
+     * constructor StubWebServer, starts serving the files straight away
+     * @param files - the body of every path served
+     */
+    public StubWebServer(Map<String, byte[]> files) throws IOException {
+        this.files = files;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return the port the files are served on, as the web port argument of App
+     */
+    public String port() {
+        return String.valueOf(server.getAddress().getPort());
+    }
+
+    /**
+     * answer a request with the file at its path, or 404
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = files.get(exchange.getRequestURI().getPath());
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (body == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * stop serving
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
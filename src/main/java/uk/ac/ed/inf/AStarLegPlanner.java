@@ -0,0 +1,173 @@
+package uk.ac.ed.inf;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+/**
+ * AStarLegPlanner finds the fewest moves between two points with an A* search over the lattice of positions the
+ * drone can reach, every move being one of the 36 headings of LongLat.nextPosition. Positions are quantised onto a
+ * fine grid for the closed set, so points reached by different move orders count as the same search state.
+ * The moves out of every expanded position are tested against the no fly zones in one pass by a HeadingEvaluator.
+ * The heuristic is the number of moves needed in a straight line, which never overestimates, so with a weight
+ * of 1 the leg found is a minimal-move collision-free leg. A weight above 1 trades optimality for speed.
+ * A planner keeps scratch arrays, so every drone needs its own.
+ */
+public class AStarLegPlanner implements LegPlanner {
+
+    /** The size of a quantisation cell of the closed set, in degrees */
+    private static final double QUANTUM = LongLat.DISTANCE_TOLERANCE / 5;
+
+    /** The number of expanded positions after which the search gives up and the fallback planner is used */
+    private static final int MAX_EXPANSIONS = 200_000;
+
+    /** tests the moves from every expanded position against the no fly zones the legs must not cross */
+    private final HeadingEvaluator headingEvaluator;
+
+    /** weight of the heuristic, 1 for plain A* */
+    private final double weight;
+
+    /** planner used if the search can't reach the target, may be null */
+    private final LegPlanner fallback;
+
+    /**
+     * A position reached by the search, linked back to the position it was reached from
+     */
+    private static final class Node implements Comparable<Node> {
+        final double longitude;
+        final double latitude;
+        final int moves;
+        final int heading;
+        final double priority;
+        final Node parent;
+
+        Node(double longitude, double latitude, int moves, int heading, double priority, Node parent) {
+            this.longitude = longitude;
+            this.latitude = latitude;
+            this.moves = moves;
+            this.heading = heading;
+            this.priority = priority;
+            this.parent = parent;
+        }
+
+        @Override
+        public int compareTo(Node o) {
+            int byPriority = Double.compare(priority, o.priority);
+            // on a tie, carry on with the deeper position, it's closer to the target
+            return byPriority != 0 ? byPriority : Integer.compare(o.moves, moves);
+        }
+    }
+
+    /**
+     * constructor AStarLegPlanner, plain A*
+     * @param noFlyZones - the no fly zones the legs must not cross
+     * @param fallback - planner used if the search can't reach the target, may be null
+     */
+    public AStarLegPlanner(NoFlyZoneIndex noFlyZones, LegPlanner fallback) {
+        this(noFlyZones, 1.0, fallback);
+    }
+
+    /**
+     * constructor AStarLegPlanner, weighted A*
+     * @param noFlyZones - the no fly zones the legs must not cross
+     * @param weight - weight of the heuristic, at least 1
+     * @param fallback - planner used if the search can't reach the target, may be null
+     */
+    public AStarLegPlanner(NoFlyZoneIndex noFlyZones, double weight, LegPlanner fallback) {
+        this.headingEvaluator = new HeadingEvaluator(noFlyZones);
+        this.weight = Math.max(1.0, weight);
+        this.fallback = fallback;
+    }
+
+    /**
+     * the least number of moves to get close to the target from the given position, ignoring the no fly zones
+     */
+    static int movesHeuristic(double longitude, double latitude, LongLat target) {
+        double distance = Math.hypot(target.longitude - longitude, target.latitude - latitude);
+        if (distance < LongLat.DISTANCE_TOLERANCE) {
+            return 0;
+        }
+        return (int) Math.floor((distance - LongLat.DISTANCE_TOLERANCE) / LongLat.DISTANCE_TOLERANCE) + 1;
+    }
+
+    /**
+     * @return key of the quantisation cell holding the position
+     */
+    private static long key(double longitude, double latitude) {
+        long x = Math.round(longitude / QUANTUM);
+        long y = Math.round(latitude / QUANTUM);
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+
+    @Override
+    public int planLeg(FlightTrace trace, LongLat target) {
+        double startLongitude = trace.lastLongitude();
+        double startLatitude = trace.lastLatitude();
+        if (LongLat.closeTo(startLongitude, startLatitude, target)) {
+            return 0;
+        }
+        boolean confined = LongLat.isConfined(startLongitude, startLatitude);
+        PriorityQueue<Node> open = new PriorityQueue<>();
+        HashMap<Long, Integer> bestMoves = new HashMap<>();
+        HashSet<Long> closed = new HashSet<>();
+        open.add(new Node(startLongitude, startLatitude, 0, LongLat.HOVERING_ANGLE,
+                weight * movesHeuristic(startLongitude, startLatitude, target), null));
+        bestMoves.put(key(startLongitude, startLatitude), 0);
+
+        int expansions = 0;
+        while (!open.isEmpty() && expansions < MAX_EXPANSIONS) {
+            Node node = open.poll();
+            long nodeKey = key(node.longitude, node.latitude);
+            if (!closed.add(nodeKey)) {
+                continue;
+            }
+            expansions++;
+            if (node.moves > 0 && LongLat.closeTo(node.longitude, node.latitude, target)) {
+                return record(trace, node);
+            }
+            long legal = headingEvaluator.legalHeadings(node.longitude, node.latitude);
+            for (int heading = 0; heading < HeadingEvaluator.NO_OF_HEADINGS; heading++) {
+                if ((legal >>> heading & 1) == 0) {
+                    continue;
+                }
+                int angle = heading * 10;
+                double nextLongitude = LongLat.nextLongitude(node.longitude, angle);
+                double nextLatitude = LongLat.nextLatitude(node.latitude, angle);
+                if (confined && !LongLat.isConfined(nextLongitude, nextLatitude)) {
+                    continue;
+                }
+                long nextKey = key(nextLongitude, nextLatitude);
+                if (closed.contains(nextKey)) {
+                    continue;
+                }
+                int moves = node.moves + 1;
+                Integer known = bestMoves.get(nextKey);
+                if (known != null && known <= moves) {
+                    continue;
+                }
+                bestMoves.put(nextKey, moves);
+                open.add(new Node(nextLongitude, nextLatitude, moves, angle,
+                        moves + weight * movesHeuristic(nextLongitude, nextLatitude, target), node));
+            }
+        }
+        if (fallback != null) {
+            return fallback.planLeg(trace, target);
+        }
+        return 0;
+    }
+
+    /**
+     * record the moves from the start of the search to the given node in the trace
+     * @return number of moves recorded
+     */
+    private static int record(FlightTrace trace, Node node) {
+        Node[] moves = new Node[node.moves];
+        for (Node n = node; n.parent != null; n = n.parent) {
+            moves[n.moves - 1] = n;
+        }
+        for (Node move : moves) {
+            trace.move(move.longitude, move.latitude, move.heading);
+        }
+        return moves.length;
+    }
+}
@@ -1,30 +1,131 @@
 package uk.ac.ed.inf;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The main class that produce the target geojson file and create deliveries& flightpath table in database
- * by calling other classes in the package
+ * by calling other classes in the package.
+ * Usage: day month year webPort databasePort [toDay toMonth toYear]
+ * With the optional last date, every day from the first date to the last one is planned in one run.
+ * The geojson file is written while the flight is planned; run with -DsplitByOrder=true for one Feature per order.
+ * Run with -Ddrones=N to share every day's orders between N drones flying at the same time.
+ * Run with -DarchiveFlight=true to also store the flight run-length encoded, see FlightCodec.
+ * Run with -Dsnapshot=file to read the web server's data from a snapshot written by WebSnapshot.
+ * Run with -DembeddedDatabase=true to write the results to an in-process database first, they are copied to the
+ * database server at the end of the run.
+ * Run with -DwriteBehind=true to write a single drone's tables and geojson file on writer threads while it plans.
+ * At the end of the run the phase timings and counters are written to metrics.json and metrics.prom.
  */
-public class App 
+public class App
 {
+    /** true to split the geojson flight into one Feature per order */
+    private static final boolean SPLIT_BY_ORDER = Boolean.getBoolean("splitByOrder");
+
+    /** number of drones every day's orders are shared between */
+    private static final int DRONES = Integer.getInteger("drones", 1);
+
+    /** true to also store the flight compactly with the FlightCodec, single drone runs only */
+    private static final boolean ARCHIVE_FLIGHT = Boolean.getBoolean("archiveFlight");
+
+    /** true to write the tables deliveries and flightpath to an embedded database until the run is planned */
+    private static final boolean EMBEDDED_DATABASE = Boolean.getBoolean("embeddedDatabase");
+
+    /** true to write the results of a single drone while it plans, see OutputPipeline */
+    private static final boolean WRITE_BEHIND = Boolean.getBoolean("writeBehind");
+
+    /** snapshot file of the web server to start from instead of sending requests, null to send them */
+    private static final String SNAPSHOT = System.getProperty("snapshot");
+
     public static void main( String[] args ) throws SQLException {
         String day = args[0];
         String month = args[1];
         String year = args[2];
         String webPort = args[3];
         String databasePort = args[4];
-        Database database = new Database(webPort,databasePort,day,month, year);
-        Menus menus = new Menus(webPort);
-        WebServer server = new WebServer(webPort);
-        Drone drone = new Drone(menus, database,server);
+        // the web server's inputs load while the database is prepared, which only needs the menus
+        WebServer server = new WebServer(webPort, SNAPSHOT == null ? null : loadSnapshot(SNAPSHOT));
+        Menus menus = new Menus(server);
+        CompletableFuture<PlanningContext> loading = PlanningContext.loadAsync(menus, server);
+        Database database = new Database(menus,databasePort,day,month, year, EMBEDDED_DATABASE);
         database.createTableDeliveries();
         database.createTableFlightpath();
-        drone.droneGo();
-        drone.deliveriesInsertion();
-        drone.flightPathInsertion();
-        File.writeToJSon(drone.pointList,day+ "-" + month + "-" + year);
-
+        if (ARCHIVE_FLIGHT) {
+            database.createTableFlightArchive();
+        }
+        PlanningContext context = PlanningContext.join(loading);
+        if (args.length >= 8) {
+            LocalDate from = LocalDate.of(Integer.parseInt(year), Integer.parseInt(month), Integer.parseInt(day));
+            LocalDate to = LocalDate.of(Integer.parseInt(args[7]), Integer.parseInt(args[6]), Integer.parseInt(args[5]));
+            BatchPlanner batchPlanner = new BatchPlanner(context, database);
+            batchPlanner.setSplitByOrder(SPLIT_BY_ORDER);
+            batchPlanner.setDrones(DRONES);
+            batchPlanner.setArchiveFlights(ARCHIVE_FLIGHT);
+            batchPlanner.plan(from, to);
+            context.saveCaches();
+            database.exportToServer();
+            database.close();
+            Metrics.export(Path.of("."));
+            return;
+        }
+        if (DRONES > 1) {
+            FleetPlanner fleetPlanner = new FleetPlanner(context, database, DRONES);
+            fleetPlanner.setSplitByOrder(SPLIT_BY_ORDER);
+            try {
+                fleetPlanner.plan(day + "-" + month + "-" + year);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            context.saveCaches();
+            database.exportToServer();
+            database.close();
+            Metrics.export(Path.of("."));
+            return;
+        }
+        Drone drone = new Drone(context, database);
+        if (WRITE_BEHIND) {
+            try (OutputPipeline output = new OutputPipeline(drone, database,
+                    GeoJsonFlightWriter.forDate(day + "-" + month + "-" + year, SPLIT_BY_ORDER))) {
+                drone.flightTrace.setListener(output);
+                drone.droneGo();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            drone.flightTrace.setListener(null); // the writer is closed, nothing may reach it any more
+        } else {
+            try (GeoJsonFlightWriter geojson = GeoJsonFlightWriter.forDate(day+ "-" + month + "-" + year, SPLIT_BY_ORDER)) {
+                drone.flightTrace.setListener(geojson);
+                drone.droneGo();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            drone.flightTrace.setListener(null); // the writer is closed, nothing may reach it any more
+            drone.deliveriesInsertion();
+            drone.flightPathInsertion();
+        }
+        if (ARCHIVE_FLIGHT) {
+            drone.archiveFlight(day + "-" + month + "-" + year);
+        }
+        context.saveCaches();
+        database.exportToServer();
+        database.close();
+        Metrics.export(Path.of("."));
     }
 
+    /**
+     * memory-map the snapshot of the web server, ending the run if it can't be read
+     * @return WebSnapshot of the file
+     */
+    private static WebSnapshot loadSnapshot(String file) {
+        try {
+            return WebSnapshot.load(Path.of(file));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+            return null;
+        }
+    }
 }
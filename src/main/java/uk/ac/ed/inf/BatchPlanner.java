@@ -0,0 +1,147 @@
+package uk.ac.ed.inf;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * BatchPlanner plans every day of a date range in one run, several days at a time on a bounded pool of threads.
+ * The days share the menus, no fly zones, landmarks and three word locations of one PlanningContext, and the
+ * connections of one Database. Every day gets its own Drone, its rows appended to the deliveries and flightpath
+ * tables and its own geojson file, written while the day is planned.
+ */
+public class BatchPlanner {
+
+    /** inputs shared by every day */
+    private final PlanningContext context;
+
+    /** database the days read their orders from and write their results to */
+    private final Database database;
+
+    /** The maximum number of days planned at the same time */
+    private final int threads;
+
+    /** true to split every day's geojson flight into one Feature per order */
+    private boolean splitByOrder = false;
+
+    /** number of drones every day's orders are shared between, see FleetPlanner */
+    private int drones = 1;
+
+    /** true to also store every single drone day's flight with the FlightCodec, see Drone.archiveFlight */
+    private boolean archiveFlights = false;
+
+    /**
+     * constructor BatchPlanner, planning as many days at a time as there are processors
+     * @param context - inputs shared by every day
+     * @param database - database the days read their orders from and write their results to
+     */
+    public BatchPlanner(PlanningContext context, Database database) {
+        this(context, database, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * constructor BatchPlanner
+     * @param context - inputs shared by every day
+     * @param database - database the days read their orders from and write their results to
+     * @param threads - the maximum number of days planned at the same time
+     */
+    public BatchPlanner(PlanningContext context, Database database, int threads) {
+        this.context = context;
+        this.database = database;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param splitByOrder - true to split every day's geojson flight into one Feature per order
+     */
+    public void setSplitByOrder(boolean splitByOrder) {
+        this.splitByOrder = splitByOrder;
+    }
+
+    /**
+     * @param drones - number of drones every day's orders are shared between, 1 for a single drone
+     */
+    public void setDrones(int drones) {
+        this.drones = Math.max(1, drones);
+    }
+
+    /**
+     * @param archiveFlights - true to also store every single drone day's flight with the FlightCodec, in a file
+     *                       and the table FLIGHTARCHIVE, which must already exist
+     */
+    public void setArchiveFlights(boolean archiveFlights) {
+        this.archiveFlights = archiveFlights;
+    }
+
+    /**
+     * plan every day from the first date to the last one, both included. The deliveries and flightpath tables
+     * must already exist, a day that fails is reported and doesn't stop the others.
+     * @param from - first date to plan
+     * @param to - last date to plan
+     * @return number of days planned successfully
+     */
+    public int plan(LocalDate from, LocalDate to) {
+        ArrayList<LocalDate> days = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            days.add(date);
+        }
+        if (days.isEmpty()) {
+            return 0;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, days.size()));
+        int planned = 0;
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (LocalDate date : days) {
+                futures.add(executor.submit(() -> {
+                    planDay(date);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                    planned++;
+                } catch (ExecutionException e) {
+                    System.err.println("Planning " + days.get(i) + " failed:");
+                    e.getCause().printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+        return planned;
+    }
+
+    /**
+     * plan a single day and write its outputs
+     * @param date - the day to plan
+     */
+    public void planDay(LocalDate date) throws Exception {
+        String day = String.format("%02d", date.getDayOfMonth());
+        String month = String.format("%02d", date.getMonthValue());
+        String year = String.valueOf(date.getYear());
+        Database dayDatabase = database.forDate(day, month, year);
+        if (drones > 1) {
+            FleetPlanner fleetPlanner = new FleetPlanner(context, dayDatabase, drones);
+            fleetPlanner.setSplitByOrder(splitByOrder);
+            fleetPlanner.plan(day + "-" + month + "-" + year);
+            return;
+        }
+        Drone drone = new Drone(context, dayDatabase);
+        try (GeoJsonFlightWriter geojson = GeoJsonFlightWriter.forDate(day + "-" + month + "-" + year, splitByOrder)) {
+            drone.flightTrace.setListener(geojson);
+            drone.droneGo();
+        }
+        drone.deliveriesInsertion();
+        drone.flightPathInsertion();
+        if (archiveFlights) {
+            drone.archiveFlight(day + "-" + month + "-" + year);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package uk.ac.ed.inf;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * BatchWriter inserts rows into one table with JDBC batches inside a single transaction. Rows are accumulated with
+ * addBatch and sent with executeBatch every batchSize rows. Nothing is visible in the table until commit() is
+ * called, and closing a writer that wasn't committed rolls back every row it was given, so a failure never leaves
+ * a half-written table behind.
+ */
+public class BatchWriter implements AutoCloseable {
+
+    /** the connection the transaction runs on, borrowed from the pool until the writer is closed */
+    private final ConnectionPool.PooledConnection conn;
+
+    /** the insert statement the rows are added to */
+    private final PreparedStatement statement;
+
+    /** The number of rows sent to the database in one batch */
+    private final int batchSize;
+
+    /** rows added since the last executeBatch */
+    private int pending = 0;
+
+    /** rows added since the writer was opened */
+    private int rowCount = 0;
+
+    /** true once the transaction has been committed */
+    private boolean committed = false;
+
+    /**
+     * constructor BatchWriter, starts the transaction
+     * @param conn - connection borrowed from the pool, handed back when the writer is closed
+     * @param insertStatement - sql of the insert, with a ? for every column
+     * @param batchSize - the number of rows sent to the database in one batch
+     */
+    BatchWriter(ConnectionPool.PooledConnection conn, String insertStatement, int batchSize) throws SQLException {
+        this.conn = conn;
+        this.batchSize = Math.max(1, batchSize);
+        try {
+            conn.connection.setAutoCommit(false);
+            this.statement = conn.prepare(insertStatement);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    /**
+     * add a row to the current batch, sending the batch once it's full
+     * @param columns - the values of the row, in the order of the insert statement's parameters
+     */
+    public void addRow(Object... columns) throws SQLException {
+        for (int i = 0; i < columns.length; i++) {
+            statement.setObject(i + 1, columns[i]);
+        }
+        statement.addBatch();
+        pending++;
+        rowCount++;
+        if (pending >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * send the rows of the current batch to the database
+     */
+    private void flush() throws SQLException {
+        if (pending > 0) {
+            Metrics.increment(Metrics.Counter.JDBC_STATEMENTS);
+            statement.executeBatch();
+            pending = 0;
+        }
+    }
+
+    /**
+     * send the last batch and commit every row added to the writer
+     */
+    public void commit() throws SQLException {
+        flush();
+        conn.connection.commit();
+        committed = true;
+    }
+
+    /**
+     * @return number of rows added to the writer
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * roll back the rows if the writer wasn't committed, and hand the connection back to the pool
+     */
+    @Override
+    public void close() {
+        try {
+            if (!committed) {
+                statement.clearBatch();
+                conn.connection.rollback();
+            }
+            conn.connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            conn.close();
+        }
+    }
+}
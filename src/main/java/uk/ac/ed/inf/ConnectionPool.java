@@ -0,0 +1,174 @@
+package uk.ac.ed.inf;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConnectionPool keeps a small bounded set of open JDBC connections, so the database operations don't pay for
+ * connection setup on every statement. Each pooled connection also caches the prepared statements it has been
+ * asked for, keyed by their sql. Connections are borrowed with borrow() and handed back by closing them, which
+ * works with try-with-resources.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    /** How long a borrower waits for an idle connection before checking the pool again, in milliseconds */
+    private static final long WAIT_MILLIS = 100;
+
+    /** JDBC String the connections are opened with */
+    private final String jdbcString;
+
+    /** The maximum number of connections the pool opens */
+    private final int maxSize;
+
+    /** connections that are open and not borrowed at the moment */
+    private final LinkedBlockingQueue<PooledConnection> idle = new LinkedBlockingQueue<>();
+
+    /** every connection opened by the pool and not yet closed */
+    private final ArrayList<PooledConnection> all = new ArrayList<>();
+
+    /** true once the pool has been closed */
+    private boolean closed = false;
+
+    /**
+     * A connection borrowed from the pool, closing it hands it back to the pool instead of closing it
+     */
+    public final class PooledConnection implements AutoCloseable {
+
+        /** the underlying JDBC connection */
+        public final Connection connection;
+
+        /** prepared statements of this connection, keyed by their sql */
+        private final HashMap<String, PreparedStatement> statements = new HashMap<>();
+
+        /** true once the borrower has handed the connection back, guarded by the pool */
+        private boolean released = false;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * get the prepared statement for the sql, preparing it only the first time it's used on this connection
+         * @param sql - the statement, with ? for its parameters
+         * @return PreparedStatement ready to have its parameters set
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        /**
+         * close the cached statements and the underlying connection
+         */
+        private void closeConnection() {
+            try {
+                for (PreparedStatement statement : statements.values()) {
+                    statement.close();
+                }
+                statements.clear();
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * hand the connection back to the pool, closing it again does nothing so it's never pooled twice
+         */
+        @Override
+        public void close() {
+            synchronized (ConnectionPool.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(this);
+        }
+    }
+
+    /**
+     * constructor ConnectionPool
+     * @param jdbcString - JDBC String the connections are opened with
+     * @param maxSize - the maximum number of connections the pool opens
+     */
+    public ConnectionPool(String jdbcString, int maxSize) {
+        this.jdbcString = jdbcString;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * borrow a connection, opening a new one if none are idle and the pool isn't full yet,
+     * otherwise wait for another borrower to hand theirs back
+     * @return PooledConnection that must be closed to return it to the pool
+     */
+    public PooledConnection borrow() throws SQLException {
+        PooledConnection pooled = idle.poll();
+        try {
+            while (pooled == null) {
+                synchronized (this) {
+                    if (closed) {
+                        throw new SQLException("Connection pool for " + jdbcString + " is closed");
+                    }
+                    if (all.size() < maxSize) {
+                        pooled = new PooledConnection(DriverManager.getConnection(jdbcString));
+                        all.add(pooled);
+                        return pooled;
+                    }
+                }
+                // wake up now and then, in case a broken connection was dropped and there is room for a new one
+                pooled = idle.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection to " + jdbcString, e);
+        }
+        synchronized (this) {
+            pooled.released = false;
+        }
+        return pooled;
+    }
+
+    /**
+     * return a borrowed connection to the pool, a connection that was closed underneath us is dropped
+     */
+    private void release(PooledConnection pooled) {
+        boolean broken;
+        try {
+            broken = pooled.connection.isClosed();
+        } catch (SQLException e) {
+            broken = true;
+        }
+        synchronized (this) {
+            if (broken || closed) {
+                all.remove(pooled);
+                pooled.closeConnection();
+                return;
+            }
+            idle.add(pooled);
+        }
+    }
+
+    /**
+     * close every connection in the pool, connections still borrowed are closed when they are handed back
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.poll()) != null) {
+            all.remove(pooled);
+            pooled.closeConnection();
+        }
+    }
+}
@@ -7,12 +7,49 @@ import java.util.ArrayList;
 /**
  * Database reads the databases orders and orderdetails at the database port and interpret the database content at
  * a particular time. This class includes helper functions to read the database data in to arraylist<orders> with
- * corresponding parameters. And also functions to create databases deliveries and flightpath and insert values
+ * corresponding parameters. And also functions to create databases deliveries and flightpath and insert values.
+ * In embedded mode the tables deliveries and flightpath are written to an in-memory Derby database inside this JVM
+ * instead, so every insert is a method call rather than a round trip to the server, and exportToServer() copies
+ * them to the server once the run is planned. The orders are always read from the server.
  */
-public class Database {
+public class Database implements AutoCloseable {
+
+    /** The maximum number of connections held open to the database */
+    private static final int POOL_SIZE = 4;
+
+    /** The default number of rows sent to the database in one batch */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** The number of rows exportToServer() sends to the server in one batch, a whole flight fits in a few */
+    private static final int EXPORT_BATCH_SIZE = 5000;
+
+    /** The number of rows fetched from the database at a time while reading the orders */
+    private static final int ORDERS_FETCH_SIZE = 256;
+
+    /** insert statement of the table deliveries */
+    private static final String INSERT_DELIVERY = "insert into deliveries values (?, ?, ?)";
+
+    /** insert statement of the table flightpath */
+    private static final String INSERT_FLIGHTPATH = "insert into flightpath values (?, ?, ?, ?, ?, ?)";
+
+    /** JDBC String of the embedded database the results are written to in embedded mode */
+    public static final String EMBEDDED_JDBC_STRING = "jdbc:derby:memory:derbyDB;create=true";
+
+    /** create statement of the table deliveries */
+    private static final String CREATE_DELIVERIES = "create table deliveries("+"orderNo varchar(8), "+
+            "deliveredTo varchar(19), "+"costInPence int)";
+
+    /** create statement of the table flightpath */
+    private static final String CREATE_FLIGHTPATH = "create table flightpath("+"orderNo varchar(8), "+
+            "fromLongitude double, "+"fromLatitude double, "+"angle int, "+"toLongitude double, "+"toLatitude double)";
+
+    /** statements of the table flightarchive */
+    private static final String DELETE_FLIGHT = "delete from flightarchive where deliveryDate = ?";
+    private static final String INSERT_FLIGHT = "insert into flightarchive values (?, ?)";
+    private static final String SELECT_FLIGHT = "select flight from flightarchive where deliveryDate = ?";
 
     /** date string used to filter the sql database  */
-    private static String dateString;
+    private final String dateString;
 
     /** data base port */
     private final String dataBasePort;
@@ -20,6 +57,19 @@ public class Database {
     /** menus used to calculate delivery cost for order.price  */
     private final Menus menus;
 
+    /** open connections to the database, reused by every operation */
+    private final ConnectionPool pool;
+
+    /** connections the tables deliveries and flightpath are written with, the embedded database's in embedded mode
+     * and the same as pool otherwise */
+    private final ConnectionPool outputPool;
+
+    /** true if this database opened the pool and closes it, false if it shares the pool of another date's */
+    private final boolean ownsPool;
+
+    /** The number of rows the batch writers send to the database in one batch */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
     /**
      * constructor Database
      * For accessing database operations
@@ -30,10 +80,66 @@ public class Database {
      * @param year  - year the date string
      */
     public Database(String port,String dataBasePort, String day, String month, String year){
-        this.menus = new Menus(port);
-        menus.parseMenus();
+        this(new Menus(port), dataBasePort, day, month, year);
+    }
+
+    /**
+     * constructor Database
+     * For accessing database operations, sharing the menus catalogue with the rest of the run
+     * @param menus - menus used to price the orders
+     * @param dataBasePort  - database port
+     * @param day  - day of the date string
+     * @param month  - month of the date string
+     * @param year  - year the date string
+     */
+    public Database(Menus menus, String dataBasePort, String day, String month, String year){
+        this(menus, dataBasePort, day, month, year, false);
+    }
+
+    /**
+     * constructor Database
+     * For accessing database operations, writing the results to the server or to an embedded database
+     * @param menus - menus used to price the orders
+     * @param dataBasePort  - database port
+     * @param day  - day of the date string
+     * @param month  - month of the date string
+     * @param year  - year the date string
+     * @param embedded - true to write the tables deliveries and flightpath to the embedded database until
+     *                 exportToServer() is called
+     */
+    public Database(Menus menus, String dataBasePort, String day, String month, String year, boolean embedded){
+        this.menus = menus;
+        menus.getCatalog();
         this.dataBasePort = dataBasePort;
-        dateString = year + "-" + month + "-" + day;
+        this.dateString = year + "-" + month + "-" + day;
+        this.pool = new ConnectionPool(getJDBCString(), POOL_SIZE);
+        this.outputPool = embedded ? new ConnectionPool(EMBEDDED_JDBC_STRING, POOL_SIZE) : pool;
+        this.ownsPool = true;
+    }
+
+    /**
+     * constructor Database for another date, sharing the menus and connections of the given database
+     */
+    private Database(Database shared, String day, String month, String year){
+        this.menus = shared.menus;
+        this.dataBasePort = shared.dataBasePort;
+        this.dateString = year + "-" + month + "-" + day;
+        this.pool = shared.pool;
+        this.outputPool = shared.outputPool;
+        this.ownsPool = false;
+        this.batchSize = shared.batchSize;
+    }
+
+    /**
+     * get a database for another date, sharing this one's menus and connections, so several dates can be read and
+     * written concurrently. Closing it leaves the connections open for this database.
+     * @param day  - day of the date string
+     * @param month  - month of the date string
+     * @param year  - year the date string
+     * @return Database filtering the orders on the given date
+     */
+    public Database forDate(String day, String month, String year){
+        return new Database(this, day, month, year);
     }
 
     /**
@@ -45,83 +151,190 @@ public class Database {
     }
 
     /**
-     * read table orders
+     * read table orders joined with orderdetails for the date in one query, one row per item, and build an order
+     * whenever the orderNo changes. The orders come in the order of their orderNo and their items in the order of
+     * their names, so the same day always gives the same orders; an order without any item rows is kept, with no items.
      * @return Arraylist<order> orders for each row in the database orders on this specific date
      */
     public ArrayList<Order> readOrders() throws SQLException {
+        final String ordersQuery = "select o.orderNo, o.deliveryDate, o.customer, o.deliverTo, d.item " +
+                "from orders o left join orderDetails d on o.orderNo = d.orderNo where o.deliveryDate = ? " +
+                "order by o.orderNo, d.item";
         ArrayList<Order> orders = new ArrayList<>();
-        final String ordersQuery = "select * from orders where deliveryDate='" + dateString + "'";
-        Connection conn = DriverManager.getConnection(getJDBCString());
-        PreparedStatement psOrdersQuery = conn.prepareStatement(ordersQuery);
-        ResultSet rs = psOrdersQuery.executeQuery();
-        while (rs.next()) { //for all rows in the database, add particular info to order and Arraylist<order> orders
-            String ordersNo = rs.getString("orderNo");
-            String deliverysDate = rs.getString("deliveryDate");
-            String customers = rs.getString("customer");
-            String deliverT = rs.getString("deliverTo");
-            ArrayList<String> items = readOrderDetails(ordersNo);
-            int price = menus.getDeliveryCost(items, menus);
-            Order order = new Order(ordersNo,deliverysDate,customers,deliverT,items,price);
-            orders.add(order);
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            PreparedStatement psOrdersQuery = conn.prepare(ordersQuery);
+            psOrdersQuery.setDate(1, Date.valueOf(dateString));
+            psOrdersQuery.setFetchSize(ORDERS_FETCH_SIZE);
+            Metrics.increment(Metrics.Counter.JDBC_STATEMENTS);
+            try (ResultSet rs = psOrdersQuery.executeQuery()) {
+                Order order = null;
+                while (rs.next()) {
+                    String ordersNo = rs.getString(1);
+                    if (order == null || !order.orderNo.equals(ordersNo)) {
+                        String deliverysDate = rs.getString(2);
+                        String customers = rs.getString(3);
+                        String deliverT = rs.getString(4);
+                        order = new Order(ordersNo,deliverysDate,customers,deliverT,new ArrayList<>(),0);
+                        orders.add(order);
+                    }
+                    String item = rs.getString(5);
+                    if (item != null) { // null for an order with no item rows
+                        order.item.add(item);
+                    }
+                }
+            }
+        }
+        for (Order order : orders) {
+            order.price = menus.getDeliveryCost(order.item, menus);
         }
         return orders;
     }
 
     /**
-     * read table orderdetails where orderNo = given orderNo
-     * @return Arraylist<String> items for the given orderNo
+     * create an empty table FLIGHTPATH in the database, in embedded mode both in the embedded database and on the
+     * server, ready for exportToServer()
      */
-    public ArrayList<String> readOrderDetails(String orderNo) throws SQLException {
-        final String orderDetailsQuery = "select * from orderDetails where orderNo=(?)";
-        Connection conn = DriverManager.getConnection(getJDBCString());
-        PreparedStatement psOrdersQuery = conn.prepareStatement(orderDetailsQuery);
-        psOrdersQuery.setString(1,orderNo);
-        ResultSet rs = psOrdersQuery.executeQuery();
-        ArrayList<String> its = new ArrayList<>();
-        while (rs.next()){
-            String it = rs.getString("item");
-            its.add(it);
+    public void createTableFlightpath() {
+        createTable(outputPool, "FLIGHTPATH", CREATE_FLIGHTPATH);
+        if (isEmbedded()) {
+            createTable(pool, "FLIGHTPATH", CREATE_FLIGHTPATH);
         }
-        return its;
     }
 
     /**
-     * create an empty table FLIGHTPATH in the database
+     * create an empty table DELIVERIES in the database, in embedded mode both in the embedded database and on the
+     * server, ready for exportToServer()
      */
-    public void createTableFlightpath() {
-        DatabaseMetaData databaseMetadata = null;
+    public void createTableDeliveries() {
+        createTable(outputPool, "DELIVERIES", CREATE_DELIVERIES);
+        if (isEmbedded()) {
+            createTable(pool, "DELIVERIES", CREATE_DELIVERIES);
+        }
+    }
+
+    /**
+     * @return true if the tables deliveries and flightpath are written to the embedded database
+     */
+    public boolean isEmbedded() {
+        return outputPool != pool;
+    }
+
+    /**
+     * copy the rows of the tables DELIVERIES and FLIGHTPATH from the embedded database to the tables created on the
+     * server by createTableDeliveries/createTableFlightpath, each in a single transaction.
+     * Does nothing unless the database is embedded.
+     */
+    public void exportToServer() {
+        if (!isEmbedded()) {
+            return;
+        }
+        long start = Metrics.start();
         try {
-            Connection conn = DriverManager.getConnection(getJDBCString());
-            Statement statement = conn.createStatement();
-            databaseMetadata = conn.getMetaData();
-            // Note: must capitalise deliveries in the call to getTables
-            ResultSet resultSet =databaseMetadata.getTables(null, null,"FLIGHTPATH", null);
-            // If the resultSet is not empty then the table exists, so we can drop it
-            if (resultSet.next()){
-                statement.execute("drop table FLIGHTPATH");
+            copyToServer("deliveries", INSERT_DELIVERY);
+            copyToServer("flightpath", INSERT_FLIGHTPATH);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        Metrics.stop(Metrics.Phase.EXPORT_TO_SERVER, start);
+    }
+
+    /**
+     * copy every row of the embedded table to the same table on the server, in batches
+     * @param table - name of the table
+     * @param insert - the insert statement of the table
+     */
+    private void copyToServer(String table, String insert) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = outputPool.borrow();
+             Statement select = conn.connection.createStatement();
+             BatchWriter writer = new BatchWriter(pool.borrow(), insert, EXPORT_BATCH_SIZE)) {
+            Metrics.increment(Metrics.Counter.JDBC_STATEMENTS);
+            try (ResultSet rs = select.executeQuery("select * from " + table)) {
+                Object[] columns = new Object[rs.getMetaData().getColumnCount()];
+                while (rs.next()) {
+                    for (int i = 0; i < columns.length; i++) {
+                        columns[i] = rs.getObject(i + 1);
+                    }
+                    writer.addRow(columns);
+                }
             }
-            statement.execute("create table flightpath("+"orderNo varchar(8), "+"fromLongitude double, "+"fromLatitude double, "+"angle int, "+"toLongitude double, "+"toLatitude double)");
+            writer.commit();
+        }
+    }
+
+    /**
+     * create the table FLIGHTARCHIVE if it doesn't exist yet. Unlike the other tables it's kept between runs,
+     * with a row per date holding the flight encoded by the FlightCodec.
+     */
+    public void createTableFlightArchive() {
+        try (ConnectionPool.PooledConnection conn = pool.borrow();
+             Statement statement = conn.connection.createStatement()) {
+            try (ResultSet resultSet = conn.connection.getMetaData().getTables(null, null, "FLIGHTARCHIVE", null)) {
+                if (resultSet.next()) {
+                    return;
+                }
+            }
+            Metrics.increment(Metrics.Counter.JDBC_STATEMENTS);
+            statement.execute("create table flightarchive(deliveryDate date, flight blob(1M))");
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * create an empty table DELIVERIES in the database
+     * store the encoded flight of this date in the table FLIGHTARCHIVE, replacing any flight stored for it before
+     * @param encoded - the flight encoded by the FlightCodec
      */
-    public void createTableDeliveries() {
-        DatabaseMetaData databaseMetadata = null;
-        try {
-            Connection conn = DriverManager.getConnection(getJDBCString());
-            Statement statement = conn.createStatement();
-            databaseMetadata = conn.getMetaData();
-            // Note: must capitalise deliveries in the call to getTables
-            ResultSet resultSet =databaseMetadata.getTables(null, null,"DELIVERIES", null);
-            // If the resultSet is not empty then the table exists, so we can drop it
-            if (resultSet.next()){
-                statement.execute("drop table DELIVERIES");
+    public void archiveFlight(byte[] encoded) {
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            PreparedStatement delete = conn.prepare(DELETE_FLIGHT);
+            delete.setDate(1, Date.valueOf(dateString));
+            Metrics.increment(Metrics.Counter.JDBC_STATEMENTS);
+            delete.execute();
+            PreparedStatement insert = conn.prepare(INSERT_FLIGHT);
+            insert.setDate(1, Date.valueOf(dateString));
+            insert.setBytes(2, encoded);
+            Metrics.increment(Metrics.Counter.JDBC_STATEMENTS);
+            insert.execute();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * read the encoded flight of this date from the table FLIGHTARCHIVE
+     * @return byte[] the flight encoded by the FlightCodec, or null if none is stored for this date
+     */
+    public byte[] readArchivedFlight() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            PreparedStatement select = conn.prepare(SELECT_FLIGHT);
+            select.setDate(1, Date.valueOf(dateString));
+            Metrics.increment(Metrics.Counter.JDBC_STATEMENTS);
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() ? rs.getBytes(1) : null;
             }
-            statement.execute("create table deliveries("+"orderNo varchar(8), "+"deliveredTo varchar(19), "+"costInPence int)");
+        }
+    }
+
+    /**
+     * drop the table if it exists and create it again empty
+     * @param pool - connections of the database the table is in
+     * @param tableName - capitalised name of the table
+     * @param createStatement - sql that creates the table
+     */
+    private static void createTable(ConnectionPool pool, String tableName, String createStatement) {
+        try (ConnectionPool.PooledConnection conn = pool.borrow();
+             Statement statement = conn.connection.createStatement()) {
+            DatabaseMetaData databaseMetadata = conn.connection.getMetaData();
+            // Note: must capitalise the table name in the call to getTables
+            try (ResultSet resultSet = databaseMetadata.getTables(null, null, tableName, null)) {
+                // If the resultSet is not empty then the table exists, so we can drop it
+                if (resultSet.next()){
+                    Metrics.increment(Metrics.Counter.JDBC_STATEMENTS);
+                    statement.execute("drop table " + tableName);
+                }
+            }
+            Metrics.increment(Metrics.Counter.JDBC_STATEMENTS);
+            statement.execute(createStatement);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -134,13 +347,12 @@ public class Database {
      * @param costInPence - cost for the delivery
      */
     public void insertToTableDelivery(String orderno, String deliverTo, int costInPence){
-        PreparedStatement delivery = null;
-        try {
-            Connection conn = DriverManager.getConnection(getJDBCString());
-            delivery = conn.prepareStatement("insert into deliveries values (?, ?, ?)");
+        try (ConnectionPool.PooledConnection conn = outputPool.borrow()) {
+            PreparedStatement delivery = conn.prepare(INSERT_DELIVERY);
             delivery.setString(1, orderno);
             delivery.setString(2, deliverTo);
             delivery.setInt(3, costInPence);
+            Metrics.increment(Metrics.Counter.JDBC_STATEMENTS);
             delivery.execute();
 
         } catch (SQLException e) {
@@ -159,16 +371,15 @@ public class Database {
      * @param toLatitude  - end lat for this flight
      */
     public void insertToTableflightPath(String orderno, double fromLongitude, double fromLatitude, int angle, double toLongitude, double toLatitude){
-        PreparedStatement flightpath = null;
-        try {
-            Connection conn = DriverManager.getConnection(getJDBCString());
-            flightpath = conn.prepareStatement("insert into flightpath values (?, ?, ?, ?, ?, ?)");
+        try (ConnectionPool.PooledConnection conn = outputPool.borrow()) {
+            PreparedStatement flightpath = conn.prepare(INSERT_FLIGHTPATH);
             flightpath.setString(1, orderno);
             flightpath.setDouble(2,fromLongitude);
             flightpath.setDouble(3,fromLatitude);
             flightpath.setInt(4,angle);
             flightpath.setDouble(5,toLongitude);
             flightpath.setDouble(6,toLatitude);
+            Metrics.increment(Metrics.Counter.JDBC_STATEMENTS);
             flightpath.execute();
 
         } catch (SQLException e) {
@@ -176,4 +387,45 @@ public class Database {
         }
     }
 
+    /**
+     * set the number of rows the batch writers send to the database in one batch
+     * @param batchSize - rows per batch, at least 1
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * open a transactional batch writer for the table DELIVERIES, with a row per delivery as
+     * (orderNo, deliveredTo, costInPence)
+     * @return BatchWriter that has to be committed and closed
+     */
+    public BatchWriter deliveriesWriter() throws SQLException {
+        return new BatchWriter(outputPool.borrow(), INSERT_DELIVERY, batchSize);
+    }
+
+    /**
+     * open a transactional batch writer for the table FLIGHTPATH, with a row per move as
+     * (orderNo, fromLongitude, fromLatitude, angle, toLongitude, toLatitude)
+     * @return BatchWriter that has to be committed and closed
+     */
+    public BatchWriter flightpathWriter() throws SQLException {
+        return new BatchWriter(outputPool.borrow(), INSERT_FLIGHTPATH, batchSize);
+    }
+
+    /**
+     * close every pooled connection if this database owns them, the database can't be used afterwards.
+     * The embedded database stays in memory until the JVM exits, so later runs in the same JVM don't have to
+     * create it again; its tables are emptied by the next run's createTableDeliveries/createTableFlightpath.
+     */
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.close();
+            if (isEmbedded()) {
+                outputPool.close();
+            }
+        }
+    }
+
 }
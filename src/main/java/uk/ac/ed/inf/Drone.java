@@ -1,23 +1,29 @@
 package uk.ac.ed.inf;
 
-import com.mapbox.geojson.Point;
-import java.awt.geom.Line2D;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * Drone plan the movement of the drone by producing a ArrayList<LongLat> path from the order of the given orders
- * and produce the final ArrayList<Point> pointList avoiding the No-fly-zones, for the final geojson file output.
+ * and produce the final FlightTrace flightTrace avoiding the No-fly-zones, for the final geojson file output.
  * It also contains several helper functions to produce the data to be inserted into the database tables.
  */
 public class Drone {
 
     /** The maximum number of moves the drone can make */
-    private static final int MAXIMUM_NO_OF_MOVES = 1500;
+    static final int MAXIMUM_NO_OF_MOVES = 1500;
 
-    /** Helps function flightpathInsertion, records the number of deliveries successfully made in the flight */
-    int noOfDeliveriesMade = 0;
+    /** The default longest time the order sequencing may take, in milliseconds, a cap only very large days reach */
+    public static final long DEFAULT_SEQUENCING_MILLIS = 200;
+
+    /** the orderno of every flightpath row, worked out by flightPathLabels(), null until then */
+    String[] flightPathLabels;
 
     /** used for menu parsing and get its port*/
     Menus menus;
@@ -25,40 +31,55 @@ public class Drone {
     /** used for database insertion calls  */
     Database database;
 
-    /** used to get the landmarks and NoFlyZones from the server  */
-    WebServer server;
+    /** the landmarks used to fly around the no fly zones */
+    List<LongLat> landmarks;
+
+    /** the no fly zones, loaded from the server once and indexed for the collision checks */
+    NoFlyZoneIndex noFlyZones;
+
+    /** estimates the moves between the stops when sequencing the orders and checking the move budget */
+    MoveCosts moveCosts = MoveCosts.STRAIGHT_LINE;
+
+    /** the moves back to Appleton Tower from anywhere, for the move budget; null to estimate them instead */
+    HomeCostField homeCosts;
+
+    /** the leg being planned, kept apart from flightTrace until it's known to leave enough moves to get home */
+    FlightTrace leg = new FlightTrace();
+
+    /** the way home from the end of the leg being planned, planned for real before the leg is taken */
+    FlightTrace legHome = new FlightTrace();
+
+    /** the way home from the end of flightTrace, already checked against the move budget */
+    FlightTrace wayHome = new FlightTrace();
 
-    /** used to record the arrayList<Point> pointList in terms of LongLat and with exact coordinate whenever the drone hovers,
-     * so it can cast .equals to order.dliveryTo*/
-    LongLat completePosition;
+    /** the longest the order sequencing may take, in milliseconds */
+    long sequencingMillis = DEFAULT_SEQUENCING_MILLIS;
 
-    /**  holds the current langlat position of the drone */
-    LongLat currentPosition;
+    /** tests all the moves from a position against the no fly zones at once, for getAngle */
+    HeadingEvaluator headingEvaluator;
 
-    /** holds the target langlat position in the next drone move   */
-    LongLat targetPosition;
+    /** plans the moves of every leg of the flight, A* by default */
+    LegPlanner legPlanner;
+
+    /** resolves the three word locations of shops and pick up points, remembering them between runs */
+    WordCache wordCache;
 
     /** given orders read from the database */
     ArrayList<Order> orders;
 
-    /** records the points visited by the drone*/
-    ArrayList<Point> pointList = new ArrayList<>();
+    /** records the points visited by the drone, with its headings, hovers and pick ups */
+    FlightTrace flightTrace = new FlightTrace();
 
     /** contains the LongLat coords of the shops and pick up points and home in the order the drone plans to fly,
      * and it contains double coords for hoverings */
     ArrayList<LongLat> path;
 
-    /** record the arrayList<Point> pointList in terms of LongLat */
-    ArrayList<LongLat> longPath = new ArrayList<>();
-
-    /** This helps function checkDelivered, It contains all the longlat in longpath, it also includes the exact
-     * hovering locations that the drone moved less than 0.00015 degrees */
-    ArrayList<LongLat> completePath = new ArrayList<>();
+    /** true for every stop of path that is the pick up point of the order whose route it comes from, so a shop at
+     * the same place as another order's pick up point is still a shop */
+    ArrayList<Boolean> pickUpStops;
 
-    /** This helps function flightpathInsertion, it records the arrayList<Point> pointList in terms of LongLat,
-     * it has the same length as pointList but it only contains two consecutive location(hovering) for the pick up points,
-     * not shopping points*/
-    ArrayList<LongLat> pickUpPath = new ArrayList<>();
+    /** true if the orders' shops and routes are already found, so droneGo doesn't look them up again */
+    private boolean routesResolved = false;
 
 
 
@@ -70,10 +91,70 @@ public class Drone {
      * @param server  - WebServer we get data from
      */
     public Drone(Menus menus, Database database, WebServer server) throws SQLException {
-        this.menus = menus;
+        this(new PlanningContext(menus, server), database);
+    }
+
+    /**
+     * constructor Drone
+     * For accessing Drone movement operations on the orders of the database's date
+     * @param context - menus, no fly zones, landmarks and three word locations shared with other drones
+     * @param database  - database we get data from
+     */
+    public Drone(PlanningContext context, Database database) throws SQLException {
+        this(context, database, database.readOrders());
+    }
+
+    /**
+     * constructor Drone
+     * For accessing Drone movement operations on the given orders
+     * @param context - menus, no fly zones, landmarks and three word locations shared with other drones
+     * @param database  - database the results are inserted into
+     * @param orders - the orders to deliver
+     */
+    public Drone(PlanningContext context, Database database, ArrayList<Order> orders) {
+        this.menus = context.menus;
         this.database = database;
-        this.server = server;
-        this.orders = database.readOrders();
+        this.landmarks = context.landmarks;
+        this.noFlyZones = context.noFlyZones;
+        this.wordCache = context.wordCache;
+        this.moveCosts = context.moveCosts;
+        this.homeCosts = context.homeCosts;
+        this.headingEvaluator = new HeadingEvaluator(noFlyZones);
+        this.legPlanner = new AStarLegPlanner(noFlyZones, new GreedyLegPlanner(this));
+        this.orders = orders;
+    }
+
+    /**
+     * tell the drone whether its orders already have their shops and routes, e.g. found by the FleetPlanner
+     * that clustered them, so droneGo starts from sorting them
+     * @param routesResolved - true if every order's orderShopLocations and route are already set
+     */
+    public void setRoutesResolved(boolean routesResolved) {
+        this.routesResolved = routesResolved;
+    }
+
+    /**
+     * choose the planner used for every leg of the flight, e.g. GreedyLegPlanner for the original behaviour
+     * @param legPlanner - the planner to use
+     */
+    public void setLegPlanner(LegPlanner legPlanner) {
+        this.legPlanner = legPlanner;
+    }
+
+    /**
+     * choose the estimate of the moves between the stops, e.g. MoveCosts.STRAIGHT_LINE for the original behaviour
+     * @param moveCosts - the estimate to use
+     */
+    public void setMoveCosts(MoveCosts moveCosts) {
+        this.moveCosts = moveCosts;
+    }
+
+    /**
+     * choose how the moves back home are counted for the move budget, null for the original estimate
+     * @param homeCosts - the moves back to Appleton Tower from anywhere in the confinement area
+     */
+    public void setHomeCosts(HomeCostField homeCosts) {
+        this.homeCosts = homeCosts;
     }
 
     /**
@@ -81,18 +162,11 @@ public class Drone {
      * @return true if crossed, false if not
      */
     public boolean isNoFlyZone(double lng1, double lat1, double lng2, double lat2){
-        boolean isCrossed = false;
+        Metrics.increment(Metrics.Counter.NO_FLY_ZONE_CHECKS);
         if(lng1==lng2 && lat1 == lat2){
             return false;
         }
-        ArrayList<Line2D> noFlyZone2D = server.getNoFlyZones();
-        for(Line2D line2D:noFlyZone2D){
-            isCrossed = line2D.intersectsLine(lng1, lat1, lng2, lat2);
-            if(isCrossed){
-                break;
-            }
-        }
-        return isCrossed;
+        return noFlyZones.intersects(lng1, lat1, lng2, lat2);
     }
 
     /**
@@ -100,17 +174,27 @@ public class Drone {
      * @return angle between the two Longlat inputs
      */
     public int getAngle(LongLat current, LongLat target){
+        return getAngle(current.longitude, current.latitude, target.longitude, target.latitude);
+    }
+
+    /**
+     * calculate the angle between the two coords, if they cross a no-fly-zone, give an angle that doesn't cross for
+     * the current coords
+     * @return angle between the two coords
+     */
+    public int getAngle(double currentLongitude, double currentLatitude, double targetLongitude, double targetLatitude){
         int angle;
         double tan = 0;
-        if(target.longitude > current.longitude && target.latitude>=current.latitude){
-            tan = Math.atan(Math.abs((target.latitude-current.latitude)/(target.longitude-current.longitude))) * 180 / Math.PI; //if in First quadrant
-        }else if(target.longitude <= current.longitude && target.latitude > current.latitude){
-            tan = (double)180 - Math.atan(Math.abs((target.latitude-current.latitude)/(target.longitude-current.longitude))) * 180 / Math.PI; //if in second quadrant
-        }else if(target.longitude <= current.longitude && target.latitude < current.latitude){
-            tan = (double)180 + Math.atan(Math.abs((target.latitude-current.latitude)/(target.longitude-current.longitude))) * 180 / Math.PI; //if in third quadrant
-        }else if(target.longitude >= current.longitude && target.latitude < current.latitude){
-            tan = (double)360 - Math.atan(Math.abs((target.latitude-current.latitude)/(target.longitude-current.longitude))) * 180 / Math.PI; //if in forth quadrant
-        }else if(target.longitude == current.longitude && target.latitude == current.latitude){                                            // if hovering
+        double slope = Math.abs((targetLatitude-currentLatitude)/(targetLongitude-currentLongitude));
+        if(targetLongitude > currentLongitude && targetLatitude>=currentLatitude){
+            tan = Math.atan(slope) * 180 / Math.PI; //if in First quadrant
+        }else if(targetLongitude <= currentLongitude && targetLatitude > currentLatitude){
+            tan = (double)180 - Math.atan(slope) * 180 / Math.PI; //if in second quadrant
+        }else if(targetLongitude <= currentLongitude && targetLatitude < currentLatitude){
+            tan = (double)180 + Math.atan(slope) * 180 / Math.PI; //if in third quadrant
+        }else if(targetLongitude >= currentLongitude && targetLatitude < currentLatitude){
+            tan = (double)360 - Math.atan(slope) * 180 / Math.PI; //if in forth quadrant
+        }else if(targetLongitude == currentLongitude && targetLatitude == currentLatitude){                                            // if hovering
             tan = LongLat.HOVERING_ANGLE;
         }
         angle = (int)tan;
@@ -127,99 +211,144 @@ public class Drone {
         if(angle == 360){
             angle = 0;
         }
-        while(isNoFlyZone(current.longitude, current.latitude, target.longitude, target.latitude)) {
-            angle += 10;
-            if(angle == 360){
-                angle = 0;
+        if(!isNoFlyZone(currentLongitude, currentLatitude, targetLongitude, targetLatitude)) {
+            return angle;
+        }
+        //rotate by 10 degrees until the move is legal, the legal moves are all tested in one pass
+        long legal = headingEvaluator.legalHeadings(currentLongitude, currentLatitude);
+        for(int rotation = 10; rotation <= 360; rotation += 10) {
+            int rotated = (angle + rotation) % 360;
+            if(HeadingEvaluator.isLegal(legal, rotated)) {
+                Metrics.add(Metrics.Counter.ANGLE_ROTATIONS, rotation / 10);
+                return rotated;
             }
-            target = current.nextPosition(angle);
         }
         return angle;
     }
 
     /**
-     * insert the three word locations into each order's orderShopLocations based on the order items by parsing menus.
+     * insert the three word locations into each order's orderShopLocations based on the order items, using the menus catalogue.
+     * An order without any shop, e.g. one with no item rows, can't be flown, so it's dropped from the orders.
      */
     public void findOrderShopLocations(){
+        MenuCatalog catalog = menus.getCatalog();
         for (Order order : orders) {
-            order.orderShopLocations = new ArrayList<>();
-            for (int j = 0; j < order.item.size(); j++) {
-                String name = order.item.get(j);
-                ArrayList<Menus.MenusJson> menusList = menus.parseMenus();
-                try {
-                    for (Menus.MenusJson mi : menusList) {
-                        for (Menus.MenusJson.Item k : mi.menu) {
-                            if (k.item.equals(name)) {
-                                if (!order.orderShopLocations.contains(mi.location)) {
-                                    order.orderShopLocations.add(mi.location);
-                                }
-                            }
-                        }
-                    }
-                } catch (IllegalArgumentException | NullPointerException e) {
-                    e.printStackTrace();
-                    System.exit(1);
-                }
+            try {
+                order.orderShopLocations = catalog.shopLocationsFor(order.item);
+            } catch (IllegalArgumentException | NullPointerException e) {
+                e.printStackTrace();
+                System.exit(1);
             }
         }
+        orders.removeIf(order -> {
+            if (order.orderShopLocations.isEmpty()) {
+                System.err.println("Skipping order " + order.orderNo + ", none of its items is on the menus");
+                return true;
+            }
+            return false;
+        });
     }
 
     /**
-     * get the LongLat locations of all shops/pickup points and add them to the order's route. with three Word Parser.
+     * get the LongLat locations of all shops/pickup points and add them to the order's route, with the three word cache
+     * prefetching every location of the day that isn't cached yet.
      * meanwhile calculate the totalDeliveryDistance from shop to shop, shop to pick up for each order
      * and their pricePerDistance based on thier price.
      */
     public void getVisitingLongLat(){
+        ArrayList<String> threeWords = new ArrayList<>();
         for (Order order : orders) {
-            ArrayList<LongLat> shops = new ArrayList<>();
-            double distance = 0;
-            order.route = new ArrayList<>();
-            for (int j = 0; j < order.orderShopLocations.size(); j++) {
-                String threeWord = order.orderShopLocations.get(j);
-                WordParser wordParser = new WordParser(menus.port);
-                WordParser.Word word = wordParser.parseWord(threeWord);
-                double lng = word.coordinates.lng;
-                double lat = word.coordinates.lat;
-                LongLat longLat = new LongLat(lng, lat);
-                shops.add(longLat);
-                order.route.add(longLat);
-                order.route.add(longLat);
-            }
-            for(int i = 0; i < shops.size()-1; i++) {
-                distance += (shops.get(i).distanceTo(shops.get(i+1)));
-            }
-            String deliverTo = order.deliverTo;
-            WordParser wordParser = new WordParser(menus.port);
-            WordParser.Word word = wordParser.parseWord(deliverTo);
-            double lng = word.coordinates.lng;
-            double lat = word.coordinates.lat;
-            LongLat longLat = new LongLat(lng, lat);
+            threeWords.addAll(order.orderShopLocations);
+            threeWords.add(order.deliverTo);
+        }
+        wordCache.prefetch(threeWords);
+        for (Order order : orders) {
+            routeOrder(order);
+        }
+    }
+
+    /**
+     * get the LongLat locations of the order's shops and pick up point and add them to its route, then calculate
+     * its totalDeliveryDistance and pricePerDistance. The order's orderShopLocations must already be found.
+     * @param order - the order to route
+     * @throws IllegalArgumentException if the order has no shop to collect from
+     */
+    public void routeOrder(Order order) {
+        if (order.orderShopLocations.isEmpty()) {
+            throw new IllegalArgumentException("Order " + order.orderNo + " has no shop to collect from");
+        }
+        ArrayList<LongLat> shops = new ArrayList<>();
+        double distance = 0;
+        order.route = new ArrayList<>();
+        for (int j = 0; j < order.orderShopLocations.size(); j++) {
+            LongLat longLat = wordCache.resolve(order.orderShopLocations.get(j));
+            shops.add(longLat);
             order.route.add(longLat);
             order.route.add(longLat);
-            order.pickUp = longLat;
-            distance += longLat.distanceTo(shops.get(shops.size()-1));
-            order.totalDeliveryDistance = distance;
-            order.pricePerDistance = (int) Math.round(order.price/order.totalDeliveryDistance);
         }
+        for(int i = 0; i < shops.size()-1; i++) {
+            distance += (shops.get(i).distanceTo(shops.get(i+1)));
+        }
+        LongLat longLat = wordCache.resolve(order.deliverTo);
+        order.route.add(longLat);
+        order.route.add(longLat);
+        order.pickUp = longLat;
+        distance += longLat.distanceTo(shops.get(shops.size()-1));
+        order.totalDeliveryDistance = distance;
+        order.pricePerDistance = (int) Math.round(order.price/order.totalDeliveryDistance);
     }
 
     /**
-     * Sort the orders which are read from the database in terms of decreasing pricePerDistance.
+     * Sort the orders which are read from the database in terms of decreasing pricePerDistance, then improve
+     * that sequence with the OrderSequencer so the most revenue is delivered within the move budget.
      */
     public void sortOrders() {
+        prepareMoveCosts(orders);
         orders.sort(Collections.reverseOrder());
+        orders = new OrderSequencer(moveCosts, MAXIMUM_NO_OF_MOVES, sequencingMillis).sequence(orders);
+    }
+
+    /**
+     * let the move estimate prepare the moves between every stop of the given routed orders, the landmarks and
+     * Appleton Tower
+     * @param routed - orders whose route is already found
+     */
+    void prepareMoveCosts(List<Order> routed) {
+        ArrayList<LongLat> points = new ArrayList<>();
+        points.add(new LongLat(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE));
+        points.addAll(landmarks);
+        for (Order order : routed) {
+            points.addAll(order.route);
+        }
+        moveCosts.prepare(points);
     }
 
     /**
-     * add all order's route to one arraylist path, with appleton tower at the start and end.
+     * set the longest the order sequencing may take, production runs can trade sequence quality for latency. The
+     * sequencing stops after a fixed number of steps, and only a day that would take longer is cut short by the cap
+     * @param sequencingMillis - cap on the sequencing in milliseconds, 0 keeps the pricePerDistance order
+     */
+    public void setSequencingMillis(long sequencingMillis) {
+        this.sequencingMillis = sequencingMillis;
+    }
+
+    /**
+     * add all order's route to one arraylist path, with appleton tower at the start and end, marking in pickUpStops
+     * the stops that are the pick up point of their own order.
      */
     public void createLangLatPath(){
         path = new ArrayList<>();
+        pickUpStops = new ArrayList<>();
         path.add(new LongLat(LongLat.APPLETON_LONGITUDE ,LongLat.APPLETON_LATITUDE));
+        pickUpStops.add(false);
         for(Order order:orders){
-            path.addAll(order.route);
+            for(LongLat stop : order.route) {
+                path.add(stop);
+                pickUpStops.add(stop == order.pickUp);
+            }
         }
         path.add(new LongLat(LongLat.APPLETON_LONGITUDE ,LongLat.APPLETON_LATITUDE));
+        pickUpStops.add(false);
     }
 
     /**
@@ -228,10 +357,12 @@ public class Drone {
     public void avoidNoFlyZone() {
         for(int counter = 0; counter < path.size()-1; counter++){
             if(isNoFlyZone(path.get(counter).longitude, path.get(counter).latitude, path.get(counter+1).longitude, path.get(counter+1).latitude)){
-                for(int i = 0; i< server.landmarks.size(); i++) {
-                    if(!(isNoFlyZone(path.get(counter).longitude, path.get(counter).latitude, server.landmarks.get(i).longitude, server.landmarks.get(i).latitude)) &&
-                            !(isNoFlyZone(path.get(counter+1).longitude, path.get(counter+1).latitude, server.landmarks.get(i).longitude, server.landmarks.get(i).latitude))) {
-                        path.add(counter+1, new LongLat(server.landmarks.get(i).longitude, server.landmarks.get(i).latitude));
+                for(int i = 0; i< landmarks.size(); i++) {
+                    if(!(isNoFlyZone(path.get(counter).longitude, path.get(counter).latitude, landmarks.get(i).longitude, landmarks.get(i).latitude)) &&
+                            !(isNoFlyZone(path.get(counter+1).longitude, path.get(counter+1).latitude, landmarks.get(i).longitude, landmarks.get(i).latitude))) {
+                        LongLat landmark = new LongLat(landmarks.get(i).longitude, landmarks.get(i).latitude);
+                        path.add(counter+1, landmark);
+                        pickUpStops.add(counter+1, false);
                         break;
                     }
                 }
@@ -241,102 +372,127 @@ public class Drone {
     }
 
     /**
-     *  Based on the Arraylist<LongLat> path, add all visiting points to ArrayList<Point> pointList
-     *  in steps of a single drone move of 0.00015.
-     *  Meanwhile, handle other helper holders, longPath, completePath, pickUpPath
+     *  Based on the Arraylist<LongLat> path, record all visiting points in the FlightTrace flightTrace
+     *  in steps of a single drone move of 0.00015, with a hover at every shop and pick up point.
      */
     public void planPath(){
         int TargetPositionFromHome = 0;
+        LongLat home = path.get(path.size()-1);
 
-        pointList.add(Point.fromLngLat(LongLat.APPLETON_LONGITUDE ,LongLat.APPLETON_LATITUDE));
-        longPath.add(new LongLat(LongLat.APPLETON_LONGITUDE ,LongLat.APPLETON_LATITUDE));
-        pickUpPath.add(new LongLat(LongLat.APPLETON_LONGITUDE ,LongLat.APPLETON_LATITUDE));
-        currentPosition = path.get(0);
-
-        //System.out.println("miao: "+ isNoFlyZone(-3.1911,55.9455, -3.1885,55.9455));
+        flightTrace.start(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE);
+        if(homeCosts != null) {
+            wayHome.clear();
+            wayHome.start(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE);
+            legPlanner.planLeg(wayHome, home);
+        }
         for(int i = 1; i < path.size(); i++){
-            int marker = 0;
-            completePosition = path.get(i-1);
-            targetPosition = path.get(i);
-            if(currentPosition.closeTo(targetPosition)) {
-                pointList.add(Point.fromLngLat(currentPosition.longitude,currentPosition.latitude));
-                longPath.add(currentPosition);
-
-                for(Order order : orders) {
-                    if(targetPosition.equals(order.pickUp)) {
-                        pickUpPath.add(currentPosition);
-                        marker = 1;
-                        break;
+            LongLat targetPosition = path.get(i);
+            double currentLongitude = flightTrace.lastLongitude();
+            double currentLatitude = flightTrace.lastLatitude();
+            if(LongLat.closeTo(currentLongitude, currentLatitude, targetPosition)) {
+                flightTrace.hover(pickUpStops.get(i) ? FlightTrace.PICKUP : FlightTrace.SHOP, i);
+            }
+
+            if(homeCosts != null) {
+                // plan the leg aside, then take it only if the hover at its end and the way home from there still
+                // fit: the field rules out the legs that clearly don't in one lookup, and the way home of the others
+                // is planned for real, so the moves flown home when a leg doesn't fit are the ones already counted
+                leg.clear();
+                leg.start(currentLongitude, currentLatitude);
+                int legMoves = legPlanner.planLeg(leg, targetPosition);
+                int movesHome = homeCosts.movesHome(leg.lastLongitude(), leg.lastLatitude());
+                if(flightTrace.size() + legMoves + 1 + movesHome <= MAXIMUM_NO_OF_MOVES) {
+                    legHome.clear();
+                    legHome.start(leg.lastLongitude(), leg.lastLatitude());
+                    movesHome = legPlanner.planLeg(legHome, home);
+                    if(flightTrace.size() + legMoves + 1 + movesHome <= MAXIMUM_NO_OF_MOVES) {
+                        for(int j = 1; j < leg.size(); j++) {
+                            flightTrace.move(leg.longitude(j), leg.latitude(j), leg.heading(j));
+                        }
+                        FlightTrace checked = wayHome;
+                        wayHome = legHome;
+                        legHome = checked;
+                        continue;
                     }
                 }
-                if(marker == 0) {
-                    pickUpPath.add(new LongLat(LongLat.FALSE_LONGITUDE,LongLat.FALSE_LATITUDE));
+                for(int j = 1; j < wayHome.size(); j++) {
+                    flightTrace.move(wayHome.longitude(j), wayHome.latitude(j), wayHome.heading(j));
                 }
+                break;
             }
-            completePath.add(completePosition);
-
-            TargetPositionFromHome = (int)(currentPosition.distanceTo(targetPosition) / LongLat.DISTANCE_TOLERANCE +
-                   targetPosition.distanceTo(path.get(path.size()-1)) / LongLat.DISTANCE_TOLERANCE);
-            if(pointList.size() < (MAXIMUM_NO_OF_MOVES - TargetPositionFromHome)) {
-                while(!currentPosition.closeTo(targetPosition)){
-                    LongLat thiscurrent = currentPosition;
-                    currentPosition = currentPosition.nextPosition(getAngle(currentPosition,targetPosition));
-                    LongLat nextcurrent = currentPosition;
-                    if(isNoFlyZone(nextcurrent.longitude,nextcurrent.latitude,thiscurrent.longitude,thiscurrent.latitude)) {
-                        currentPosition = thiscurrent.nextPosition(getAngle(thiscurrent,nextcurrent));
-                    }
-                    pointList.add(Point.fromLngLat(currentPosition.longitude,currentPosition.latitude));
-                    longPath.add(currentPosition);
-                    pickUpPath.add(currentPosition);
-                    completePath.add(currentPosition);
-                }
+            double toTarget = LongLat.distance(currentLongitude, currentLatitude,
+                    targetPosition.longitude, targetPosition.latitude) / LongLat.DISTANCE_TOLERANCE;
+            TargetPositionFromHome = Math.max(
+                    (int)(toTarget + targetPosition.distanceTo(home) / LongLat.DISTANCE_TOLERANCE),
+                    (int) toTarget + moveCosts.moves(targetPosition, home));
+            if(flightTrace.size() < (MAXIMUM_NO_OF_MOVES - TargetPositionFromHome)) {
+                legPlanner.planLeg(flightTrace, targetPosition);
             } else{
-                targetPosition = path.get(path.size()-1);
-                while(!currentPosition.closeTo(targetPosition)){
-                    LongLat thiscurrent = currentPosition;
-                    currentPosition = currentPosition.nextPosition(getAngle(currentPosition,targetPosition));
-                    LongLat nextcurrent = currentPosition;
-                    if(isNoFlyZone(nextcurrent.longitude,nextcurrent.latitude,thiscurrent.longitude,thiscurrent.latitude)) {
-                        currentPosition = thiscurrent.nextPosition(getAngle(thiscurrent,nextcurrent));
-                    }
-                    pointList.add(Point.fromLngLat(currentPosition.longitude,currentPosition.latitude));
-                    longPath.add(currentPosition);
-                    pickUpPath.add(currentPosition);
-                    completePath.add(currentPosition);
-                }
+                legPlanner.planLeg(flightTrace, home);
                 break;
             }
         }
-        completePath.add(new LongLat(LongLat.APPLETON_LONGITUDE ,LongLat.APPLETON_LATITUDE));
+        int moves = 0;
+        for(int i = 1; i < flightTrace.size(); i++) {
+            if(flightTrace.heading(i) != LongLat.HOVERING_ANGLE) {
+                moves++;
+            }
+        }
+        Metrics.add(Metrics.Counter.MOVES, moves);
+    }
+
+    /**
+     * index the orders by their pick up point, so the orders of a position are found in one hash lookup
+     * @return HashMap<GridPoint, ArrayDeque<Order>> the orders of every pick up point, in the order they're flown
+     */
+    private HashMap<GridPoint, ArrayDeque<Order>> indexPickUps() {
+        HashMap<GridPoint, ArrayDeque<Order>> pickUps = new HashMap<>();
+        for(Order order : orders) {
+            pickUps.computeIfAbsent(GridPoint.of(order.pickUp), point -> new ArrayDeque<>()).add(order);
+        }
+        return pickUps;
     }
 
     /**
-     * A summary function that calls all necessary functions to make the drone move
+     * A summary function that calls all necessary functions to make the drone move, skipping the look up of the
+     * shops and routes if they are already resolved
      */
     public void droneGo() {
-        findOrderShopLocations();
-        getVisitingLongLat();
+        long start;
+        if (!routesResolved) {
+            start = Metrics.start();
+            findOrderShopLocations();
+            Metrics.stop(Metrics.Phase.FIND_ORDER_SHOP_LOCATIONS, start);
+            start = Metrics.start();
+            getVisitingLongLat();
+            Metrics.stop(Metrics.Phase.GET_VISITING_LONG_LAT, start);
+        }
+        start = Metrics.start();
         sortOrders();
+        Metrics.stop(Metrics.Phase.SORT_ORDERS, start);
+        start = Metrics.start();
         createLangLatPath();
-        server.getLandMarks();
         avoidNoFlyZone();
+        Metrics.stop(Metrics.Phase.AVOID_NO_FLY_ZONE, start);
+        start = Metrics.start();
         planPath();
+        Metrics.stop(Metrics.Phase.PLAN_PATH, start);
     }
 
     /**
-     * Mark order objects order.isDelivered true if it's indeed delivered.
+     * Mark order objects order.isDelivered true if it's indeed delivered. Every hover at a pick up point delivers
+     * the first order of that point that isn't delivered yet.
      */
     public void checkDelivered() {
-        ArrayList<LongLat> hoverings = new ArrayList<>();
-        for(int i=0; i < completePath.size()-1; i++) {
-            if(completePath.get(i).equals(completePath.get(i+1))) {
-                hoverings.add(completePath.get(i));
-                i++;
+        HashMap<GridPoint, ArrayDeque<Order>> pickUps = indexPickUps();
+        for(int i = 0; i < flightTrace.size(); i++) {
+            if(!flightTrace.isPickUp(i)) {
+                continue;
             }
-        }
-        for(Order order : orders) {
-            for (LongLat hover : hoverings) {
-                if (order.pickUp.equals(hover) && !order.isDelivered) {
+            ArrayDeque<Order> waiting = pickUps.get(GridPoint.of(path.get(flightTrace.waypoint(i))));
+            while (waiting != null && !waiting.isEmpty()) {
+                Order order = waiting.poll();
+                if (!order.isDelivered) {
                     order.isDelivered = true;
                     break;
                 }
@@ -348,13 +504,54 @@ public class Drone {
      * Insert orders into database deliveries, based on their isDelivered field.
      */
     public void deliveriesInsertion() {
+        long start = Metrics.start();
         checkDelivered();
-        for(Order order : orders) {
-            if(order.isDelivered) {
-                database.insertToTableDelivery(order.orderNo, order.deliverTo, order.price);
-                noOfDeliveriesMade += 1;
+        try (BatchWriter writer = database.deliveriesWriter()) {
+            for(Order order : orders) {
+                if(order.isDelivered) {
+                    writer.addRow(order.orderNo, order.deliverTo, order.price);
+                }
             }
+            writer.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
+        Metrics.stop(Metrics.Phase.DELIVERIES_INSERTION, start);
+    }
+
+    /**
+     * assign the correct orderno to the moves of completed deliveries and BACKHOME to the last moves back to
+     * appleton tower, with the FlightLabeller the OutputPipeline labels its rows with. The labels are worked out
+     * once and kept.
+     * @return String[] the orderno of every flightpath row, the move from trace entry i to entry i + 1
+     */
+    public String[] flightPathLabels() {
+        if (flightPathLabels != null) {
+            return flightPathLabels;
+        }
+        String[] labels = new String[Math.max(0, flightTrace.size()-1)];
+        FlightLabeller<Integer> labeller = new FlightLabeller<>(orders, (row, label) -> labels[row] = label);
+        for(int i = 0; i < labels.length; i++) {
+            labeller.add(i, flightTrace.isPickUp(i+1));
+        }
+        labeller.finish();
+        flightPathLabels = labels;
+        return labels;
+    }
+
+    /**
+     * Store the flight compactly with the FlightCodec: in drone-dd-mm-yyyy.flight, and in the table FLIGHTARCHIVE,
+     * replacing the flight of the same date. Call it after flightPathInsertion.
+     * @param date - the date in the file name, dd-mm-yyyy
+     */
+    public void archiveFlight(String date) {
+        byte[] encoded = FlightCodec.encode(flightTrace, flightPathLabels());
+        try {
+            FlightCodec.write(Path.of("drone-" + date + ".flight"), encoded);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        database.archiveFlight(encoded);
     }
 
     /**
@@ -362,24 +559,18 @@ public class Drone {
      * deliveries and BACKHOME to the last move back to appleton tower.
      */
     public void flightPathInsertion() {
-        int angle;
-        int j = 0;
-        String orderStr;
-        for(int i = 0; i < longPath.size()-1; i++) {
-            angle = getAngle(longPath.get(i),longPath.get(i+1));
-            if(pickUpPath.get(i).equals(pickUpPath.get(i+1))) {
-                orders.get(j).isOrderDone = true;
-            }
-            orderStr = orders.get(j).orderNo;
-            if(j == noOfDeliveriesMade || orders.get(orders.size()-1).isOrderDone) {
-                orderStr = "BACKHOME";
-            } else if(orders.get(j).isOrderDone && j < (orders.size() - 1)) {
-                j++;
+        long start = Metrics.start();
+        String[] labels = flightPathLabels();
+        try (BatchWriter writer = database.flightpathWriter()) {
+            for(int i = 0; i < flightTrace.size()-1; i++) {
+                writer.addRow(labels[i], flightTrace.longitude(i), flightTrace.latitude(i), flightTrace.heading(i+1),
+                        flightTrace.longitude(i+1), flightTrace.latitude(i+1));
             }
-            database.insertToTableflightPath(orderStr, longPath.get(i).longitude, longPath.get(i).latitude, angle,
-                    longPath.get(i+1).longitude, longPath.get(i+1).latitude);
+            writer.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
-
+        Metrics.stop(Metrics.Phase.FLIGHTPATH_INSERTION, start);
     }
 
 }
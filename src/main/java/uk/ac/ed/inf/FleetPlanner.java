@@ -0,0 +1,296 @@
+package uk.ac.ed.inf;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * FleetPlanner shares a day's orders between several drones. The orders are clustered by where they're collected
+ * and delivered, with k-means on the pick up point and the middle of the shops of every order, and each drone
+ * plans one cluster with its own move budget. The drones plan at the same time over the read-only PlanningContext,
+ * each appends its rows to the deliveries and flightpath tables and writes its own geojson file,
+ * drone-dd-mm-yyyy-dK.geojson for drone K.
+ */
+public class FleetPlanner {
+
+    /** The seed of the k-means initialisation, so the same orders are always shared the same way */
+    private static final long CLUSTER_SEED = 42;
+
+    /** The maximum number of k-means iterations */
+    private static final int MAX_ITERATIONS = 50;
+
+    /** inputs shared by every drone */
+    private final PlanningContext context;
+
+    /** database of the day the orders are read from and the results written to */
+    private final Database database;
+
+    /** number of drones the orders are shared between */
+    private final int drones;
+
+    /** true to split every drone's geojson flight into one Feature per order */
+    private boolean splitByOrder = false;
+
+    /**
+     * constructor FleetPlanner
+     * @param context - inputs shared by every drone
+     * @param database - database of the day the orders are read from and the results written to
+     * @param drones - number of drones the orders are shared between
+     */
+    public FleetPlanner(PlanningContext context, Database database, int drones) {
+        this.context = context;
+        this.database = database;
+        this.drones = Math.max(1, drones);
+    }
+
+    /**
+     * @param splitByOrder - true to split every drone's geojson flight into one Feature per order
+     */
+    public void setSplitByOrder(boolean splitByOrder) {
+        this.splitByOrder = splitByOrder;
+    }
+
+    /**
+     * plan the day with the whole fleet and write every drone's outputs. The deliveries and flightpath tables must
+     * already exist.
+     * @param date - the date in the file names, dd-mm-yyyy
+     * @return ArrayList<Drone> the drones that flew, one per non-empty cluster
+     */
+    public ArrayList<Drone> plan(String date) throws Exception {
+        ArrayList<Order> orders = database.readOrders();
+        ArrayList<Drone> fleet = new ArrayList<>();
+        if (orders.isEmpty()) {
+            return fleet;
+        }
+        // resolve every location once, so the orders can be clustered by where they are, and hand the routes on
+        Drone resolver = new Drone(context, database, orders);
+        long start = Metrics.start();
+        resolver.findOrderShopLocations();
+        Metrics.stop(Metrics.Phase.FIND_ORDER_SHOP_LOCATIONS, start);
+        start = Metrics.start();
+        resolver.getVisitingLongLat();
+        Metrics.stop(Metrics.Phase.GET_VISITING_LONG_LAT, start);
+        resolver.prepareMoveCosts(orders);
+        if (orders.isEmpty()) { // every order was dropped for having no shop
+            return fleet;
+        }
+        for (ArrayList<Order> cluster : cluster(orders, Math.min(drones, orders.size()))) {
+            if (!cluster.isEmpty()) {
+                Drone drone = new Drone(context, database, cluster);
+                drone.setRoutesResolved(true);
+                fleet.add(drone);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(fleet.size());
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (int k = 0; k < fleet.size(); k++) {
+                Drone drone = fleet.get(k);
+                Path file = Path.of("drone-" + date + "-d" + (k + 1) + ".geojson");
+                futures.add(executor.submit(() -> {
+                    try (GeoJsonFlightWriter geojson = new GeoJsonFlightWriter(file, splitByOrder)) {
+                        drone.flightTrace.setListener(geojson);
+                        drone.droneGo();
+                    }
+                    drone.deliveriesInsertion();
+                    drone.flightPathInsertion();
+                    return null;
+                }));
+            }
+            Exception failure = null;
+            for (int k = 0; k < futures.size(); k++) {
+                try {
+                    futures.get(k).get();
+                } catch (ExecutionException e) {
+                    System.err.println("Drone " + (k + 1) + " of " + date + " failed:");
+                    e.getCause().printStackTrace();
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return fleet;
+    }
+
+    /**
+     * share the orders between k clusters with k-means on the pick up point and the middle of the shops of every
+     * order, whose route must already be resolved. The first centres are chosen k-means++ style with a fixed seed.
+     * No cluster is left empty as long as there are at least k orders, even when fewer than k of them are at
+     * different places.
+     * @return the k clusters, in the order of the given orders within each cluster
+     */
+    static ArrayList<ArrayList<Order>> cluster(List<Order> orders, int k) {
+        int n = orders.size();
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            points[i] = features(orders.get(i));
+        }
+        Random random = new Random(CLUSTER_SEED);
+        double[][] centres = new double[k][];
+        centres[0] = points[random.nextInt(n)].clone();
+        double[] nearest = new double[n];
+        for (int c = 1; c < k; c++) {
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                nearest[i] = Double.POSITIVE_INFINITY;
+                for (int j = 0; j < c; j++) {
+                    nearest[i] = Math.min(nearest[i], squaredDistance(points[i], centres[j]));
+                }
+                total += nearest[i];
+            }
+            double pick = random.nextDouble() * total;
+            int chosen = n - 1;
+            for (int i = 0; i < n; i++) {
+                pick -= nearest[i];
+                if (pick <= 0) {
+                    chosen = i;
+                    break;
+                }
+            }
+            centres[c] = points[chosen].clone();
+        }
+
+        // every centre update is followed by an assignment, so a cluster re-seeded on the last iteration still
+        // gets its points
+        int[] assignment = new int[n];
+        assign(points, centres, assignment);
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            double[][] sums = new double[k][points[0].length];
+            int[] counts = new int[k];
+            for (int i = 0; i < n; i++) {
+                counts[assignment[i]]++;
+                for (int d = 0; d < points[i].length; d++) {
+                    sums[assignment[i]][d] += points[i][d];
+                }
+            }
+            boolean[] seeded = new boolean[n];
+            for (int c = 0; c < k; c++) {
+                if (counts[c] == 0) {
+                    // an empty cluster takes over the point furthest from its centre, a different one for every
+                    // empty cluster
+                    int furthest = -1;
+                    for (int i = 0; i < n; i++) {
+                        if (!seeded[i] && (furthest < 0 || squaredDistance(points[i], centres[assignment[i]])
+                                > squaredDistance(points[furthest], centres[assignment[furthest]]))) {
+                            furthest = i;
+                        }
+                    }
+                    seeded[furthest] = true;
+                    centres[c] = points[furthest].clone();
+                    continue;
+                }
+                for (int d = 0; d < sums[c].length; d++) {
+                    centres[c][d] = sums[c][d] / counts[c];
+                }
+            }
+            if (!assign(points, centres, assignment)) {
+                break;
+            }
+        }
+        fillEmptyClusters(points, assignment, k);
+
+        ArrayList<ArrayList<Order>> clusters = new ArrayList<>();
+        for (int c = 0; c < k; c++) {
+            clusters.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            clusters.get(assignment[i]).add(orders.get(i));
+        }
+        return clusters;
+    }
+
+    /**
+     * give every cluster still empty, which happens when fewer than k points are at different places, a point of the
+     * largest cluster, so every cluster has a point when there are at least k of them
+     */
+    private static void fillEmptyClusters(double[][] points, int[] assignment, int k) {
+        int[] counts = new int[k];
+        for (int c : assignment) {
+            counts[c]++;
+        }
+        for (int c = 0; c < k; c++) {
+            if (counts[c] > 0) {
+                continue;
+            }
+            int largest = 0;
+            for (int other = 1; other < k; other++) {
+                if (counts[other] > counts[largest]) {
+                    largest = other;
+                }
+            }
+            if (counts[largest] < 2) {
+                return; // fewer points than clusters
+            }
+            for (int i = points.length - 1; i >= 0; i--) {
+                if (assignment[i] == largest) {
+                    assignment[i] = c;
+                    counts[largest]--;
+                    counts[c]++;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * assign every point to its nearest centre, the first of them on a tie
+     * @return true if any point changed cluster
+     */
+    private static boolean assign(double[][] points, double[][] centres, int[] assignment) {
+        boolean changed = false;
+        for (int i = 0; i < points.length; i++) {
+            int best = 0;
+            for (int c = 1; c < centres.length; c++) {
+                if (squaredDistance(points[i], centres[c]) < squaredDistance(points[i], centres[best])) {
+                    best = c;
+                }
+            }
+            changed |= assignment[i] != best;
+            assignment[i] = best;
+        }
+        return changed;
+    }
+
+    /**
+     * @return the clustering coordinates of the order, its pick up point followed by the middle of its shops
+     */
+    private static double[] features(Order order) {
+        double shopLongitude = 0;
+        double shopLatitude = 0;
+        int shops = 0;
+        for (LongLat stop : order.route) {
+            if (stop != order.pickUp) {
+                shopLongitude += stop.longitude;
+                shopLatitude += stop.latitude;
+                shops++;
+            }
+        }
+        if (shops == 0) {
+            return new double[]{order.pickUp.longitude, order.pickUp.latitude,
+                    order.pickUp.longitude, order.pickUp.latitude};
+        }
+        return new double[]{order.pickUp.longitude, order.pickUp.latitude,
+                shopLongitude / shops, shopLatitude / shops};
+    }
+
+    /**
+     * @return the squared euclidean distance between the two points
+     */
+    private static double squaredDistance(double[] a, double[] b) {
+        double sum = 0;
+        for (int d = 0; d < a.length; d++) {
+            sum += (a[d] - b[d]) * (a[d] - b[d]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,234 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * FlightCodec stores a flight compactly. Every move has the same length, so a flight is fully determined by where it
+ * starts and the headings it moves in: the codec keeps the start coordinates and the run-length encoded headings,
+ * in 10 degree codes, with hovers as codes of their own, together with the run-length encoded order numbers of the
+ * flightpath rows. Decoding replays the moves with LongLat.nextLongitude/nextLatitude, the same steps the planners
+ * take, so the coordinates come back exactly as they were flown.
+ *
+ * The encoding is big-endian: the magic and version, the start longitude and latitude, the number of label runs
+ * followed by each run's order number (unsigned short length and UTF-8) and row count, then the number of heading
+ * runs as an int followed by each run's code byte and length. The other counts and lengths are varints.
+ */
+public final class FlightCodec {
+
+    /** The first int of every encoded flight */
+    private static final int MAGIC = 0x44464c54;
+
+    /** The version of the encoding */
+    private static final int VERSION = 1;
+
+    /** The code of a hover at a shop, codes below it are headings divided by 10 */
+    static final int HOVER_CODE = HeadingEvaluator.NO_OF_HEADINGS;
+
+    /** The code of a hover at a pick up point */
+    static final int PICK_UP_CODE = HOVER_CODE + 1;
+
+    /** The most rows a flight can have, the move budget of a drone, decoding stops at runs that would go past it */
+    static final int MAX_ROWS = Drone.MAXIMUM_NO_OF_MOVES;
+
+    /**
+     * A decoded flight: the trace replayed from the headings and the order number of every flightpath row
+     */
+    public static final class Flight {
+
+        /** the replayed flight, one entry more than there are rows */
+        public final FlightTrace trace;
+
+        /** the order number of every row, labels[i] for the move from entry i to entry i + 1 */
+        public final String[] labels;
+
+        Flight(FlightTrace trace, String[] labels) {
+            this.trace = trace;
+            this.labels = labels;
+        }
+    }
+
+    private FlightCodec() {
+    }
+
+    /**
+     * encode the flight
+     * @param trace - the flight, starting with its start point
+     * @param labels - the order number of every flightpath row, one fewer than the entries of the trace
+     * @return byte[] the encoded flight
+     * @throws IllegalArgumentException if the labels don't match the rows or there are more than MAX_ROWS rows
+     */
+    public static byte[] encode(FlightTrace trace, String[] labels) {
+        if (labels.length != Math.max(0, trace.size() - 1)) {
+            throw new IllegalArgumentException(labels.length + " labels for " + trace.size() + " entries");
+        }
+        if (labels.length > MAX_ROWS) {
+            throw new IllegalArgumentException(labels.length + " rows, more than the " + MAX_ROWS + " of a flight");
+        }
+        ArrayList<byte[]> labelRuns = new ArrayList<>();
+        ArrayList<Integer> labelLengths = new ArrayList<>();
+        int labelBytes = 0;
+        for (int i = 0; i < labels.length; i++) {
+            if (i > 0 && labels[i].equals(labels[i - 1])) {
+                labelLengths.set(labelLengths.size() - 1, labelLengths.get(labelLengths.size() - 1) + 1);
+            } else {
+                byte[] label = labels[i].getBytes(StandardCharsets.UTF_8);
+                labelRuns.add(label);
+                labelLengths.add(1);
+                labelBytes += Short.BYTES + label.length + 5;
+            }
+        }
+        // a heading run takes at most a code byte and a 2 byte length, as a flight is far shorter than 16384 moves
+        ByteBuffer out = ByteBuffer.allocate(32 + labelBytes + 6 * trace.size());
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putDouble(trace.size() > 0 ? trace.longitude(0) : LongLat.APPLETON_LONGITUDE);
+        out.putDouble(trace.size() > 0 ? trace.latitude(0) : LongLat.APPLETON_LATITUDE);
+        putVarint(out, labelRuns.size());
+        for (int r = 0; r < labelRuns.size(); r++) {
+            out.putShort((short) labelRuns.get(r).length);
+            out.put(labelRuns.get(r));
+            putVarint(out, labelLengths.get(r));
+        }
+
+        // the number of heading runs goes before them, so it's written into the space left for it afterwards
+        int runCountAt = out.position();
+        out.putInt(0);
+        int runs = 0;
+        int i = 1;
+        while (i < trace.size()) {
+            int code = code(trace, i);
+            int length = 1;
+            while (i + length < trace.size() && code(trace, i + length) == code) {
+                length++;
+            }
+            out.put((byte) code);
+            putVarint(out, length);
+            runs++;
+            i += length;
+        }
+        out.putInt(runCountAt, runs);
+        byte[] encoded = new byte[out.position()];
+        out.flip();
+        out.get(encoded);
+        return encoded;
+    }
+
+    /**
+     * decode a flight, replaying its moves
+     * @param encoded - the bytes written by encode()
+     * @return Flight the replayed trace and the order numbers of its rows
+     * @throws IllegalArgumentException if the bytes aren't an encoded flight
+     */
+    public static Flight decode(byte[] encoded) {
+        ByteBuffer in = ByteBuffer.wrap(encoded);
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IllegalArgumentException("not an encoded flight of version " + VERSION);
+            }
+            FlightTrace trace = new FlightTrace();
+            trace.start(in.getDouble(), in.getDouble());
+
+            ArrayList<String> labels = new ArrayList<>();
+            int labelRuns = getVarint(in);
+            for (int r = 0; r < labelRuns; r++) {
+                byte[] label = new byte[Short.toUnsignedInt(in.getShort())];
+                in.get(label);
+                String orderNo = new String(label, StandardCharsets.UTF_8);
+                int length = getVarint(in);
+                if (length > MAX_ROWS - labels.size()) {
+                    throw new IllegalArgumentException("label run of " + length + " rows after " + labels.size()
+                            + ", more than the " + MAX_ROWS + " of a flight");
+                }
+                for (int n = length; n > 0; n--) {
+                    labels.add(orderNo);
+                }
+            }
+
+            int runs = in.getInt();
+            int waypoint = 0;
+            for (int r = 0; r < runs; r++) {
+                int code = in.get();
+                if (code < 0 || code > PICK_UP_CODE) {
+                    throw new IllegalArgumentException("invalid heading code " + code);
+                }
+                int length = getVarint(in);
+                if (length > MAX_ROWS - (trace.size() - 1)) {
+                    throw new IllegalArgumentException("heading run of " + length + " rows after " + (trace.size() - 1)
+                            + ", more than the " + MAX_ROWS + " of a flight");
+                }
+                for (int n = 0; n < length; n++) {
+                    if (code == HOVER_CODE || code == PICK_UP_CODE) {
+                        // the waypoints of the original path aren't kept, hovers are numbered in order instead
+                        trace.hover(code == PICK_UP_CODE ? FlightTrace.PICKUP : FlightTrace.SHOP, waypoint++);
+                    } else {
+                        int heading = code * 10;
+                        trace.move(LongLat.nextLongitude(trace.lastLongitude(), heading),
+                                LongLat.nextLatitude(trace.lastLatitude(), heading), heading);
+                    }
+                }
+            }
+            if (labels.size() != trace.size() - 1) {
+                throw new IllegalArgumentException(labels.size() + " labels for " + trace.size() + " entries");
+            }
+            return new Flight(trace, labels.toArray(new String[0]));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated encoded flight", e);
+        }
+    }
+
+    /**
+     * write the encoded flight to a binary file
+     */
+    public static void write(Path file, byte[] encoded) throws IOException {
+        Files.write(file, encoded);
+    }
+
+    /**
+     * read and decode a flight from a binary file
+     */
+    public static Flight read(Path file) throws IOException {
+        return decode(Files.readAllBytes(file));
+    }
+
+    /**
+     * @return the code of the entry, its heading divided by 10 or a hover code
+     */
+    private static int code(FlightTrace trace, int i) {
+        if (trace.heading(i) == LongLat.HOVERING_ANGLE) {
+            return trace.isPickUp(i) ? PICK_UP_CODE : HOVER_CODE;
+        }
+        return trace.heading(i) / 10;
+    }
+
+    /**
+     * write a non-negative int in 7 bit groups, the high bit set on every group but the last
+     */
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * @return the non-negative int written by putVarint
+     */
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+}
@@ -0,0 +1,86 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * FlightLabeller gives every flightpath row the order number of the order it's flown for, taking the rows one at a
+ * time in the order they're flown, so the same rule labels a finished trace and a flight still being planned.
+ * The orders are flown in their order, and the order a move flies for is only known once that order is picked up:
+ * the rows of the order being flown are held back until its pick up hover and then labelled with its order number.
+ * The pick up hover of the last order is already on the way home, so it and every later row are BACKHOME, and so are
+ * the rows still held back when the flight ends, as the drone turned home before reaching that pick up point.
+ * @param <R> - the type of the rows, e.g. their index or the row itself
+ */
+public class FlightLabeller<R> {
+
+    /** The order number of the moves that don't deliver an order */
+    public static final String BACKHOME = "BACKHOME";
+
+    /** the orders in the order they're flown */
+    private final List<Order> orders;
+
+    /** told the order number of every row once it's known, in the order the rows were added */
+    private final BiConsumer<R, String> labelled;
+
+    /** index in orders of the order being flown */
+    private int current = 0;
+
+    /** true once the last order is picked up, every later row is BACKHOME */
+    private boolean finished;
+
+    /** rows of the order being flown, held back until it's picked up */
+    private final ArrayList<R> held = new ArrayList<>();
+
+    /**
+     * constructor FlightLabeller
+     * @param orders - the orders in the order they're flown
+     * @param labelled - told the order number of every row once it's known, in the order the rows were added
+     */
+    public FlightLabeller(List<Order> orders, BiConsumer<R, String> labelled) {
+        this.orders = orders;
+        this.labelled = labelled;
+        this.finished = orders.isEmpty();
+    }
+
+    /**
+     * add the next row of the flight, labelling it and the rows held back before it if its order is now known
+     * @param row - the row of the move
+     * @param pickUp - true if the move reaches a pick up hover
+     * @return Order the order picked up by the move, null if it picks none up
+     */
+    public Order add(R row, boolean pickUp) {
+        if (finished) {
+            labelled.accept(row, BACKHOME);
+            return null;
+        }
+        if (!pickUp) {
+            held.add(row);
+            return null;
+        }
+        Order order = orders.get(current);
+        for (R heldRow : held) {
+            labelled.accept(heldRow, order.orderNo);
+        }
+        held.clear();
+        boolean last = current == orders.size() - 1;
+        labelled.accept(row, last ? BACKHOME : order.orderNo);
+        if (last) {
+            finished = true;
+        } else {
+            current++;
+        }
+        return order;
+    }
+
+    /**
+     * end of the flight, label the rows still held back BACKHOME
+     */
+    public void finish() {
+        for (R row : held) {
+            labelled.accept(row, BACKHOME);
+        }
+        held.clear();
+    }
+}
@@ -0,0 +1,15 @@
+package uk.ac.ed.inf;
+
+/**
+ * FlightListener is told about every point of the flight as soon as FlightTrace records it, so outputs such as the
+ * geojson file can be written while the flight is still being planned instead of from the finished trace.
+ */
+public interface FlightListener {
+
+    /**
+     * called once for every entry recorded in the trace, in order
+     * @param heading - the heading of the move that reached the point, LongLat.HOVERING_ANGLE for hovers and the start
+     * @param flags - the FlightTrace flags of the entry
+     */
+    void pointAdded(double longitude, double latitude, int heading, int flags);
+}
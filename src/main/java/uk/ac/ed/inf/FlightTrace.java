@@ -0,0 +1,170 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * FlightTrace records the flight of the drone, one entry per point it flies through, starting with its position
+ * before the first move. The entries are stored column by column in growable primitive arrays: longitude, latitude,
+ * the heading of the move that reached the point, event flags and the path index of the waypoint the drone hovers
+ * at. Appending an entry never allocates once the arrays have grown to the size of a flight.
+ */
+public class FlightTrace {
+
+    /** flag of an entry where the drone hovers instead of moving */
+    public static final int HOVER = 1;
+
+    /** flag of a hover at the pick up point of an order */
+    public static final int PICKUP = 2;
+
+    /** flag of a hover at a shop */
+    public static final int SHOP = 4;
+
+    /** waypoint index of entries that aren't at a waypoint */
+    public static final int NO_WAYPOINT = -1;
+
+    /** The number of entries the columns have room for at first, enough for a whole flight */
+    private static final int INITIAL_CAPACITY = 1536;
+
+    /** longitude of every entry */
+    private double[] longitudes;
+
+    /** latitude of every entry */
+    private double[] latitudes;
+
+    /** heading of the move that reached every entry, LongLat.HOVERING_ANGLE for hovers and the start */
+    private int[] headings;
+
+    /** event flags of every entry */
+    private int[] flags;
+
+    /** index in the drone's path of the waypoint every hover is at, NO_WAYPOINT for other entries */
+    private int[] waypoints;
+
+    /** number of entries recorded */
+    private int size = 0;
+
+    /** told about every entry as it's recorded, may be null */
+    private FlightListener listener;
+
+    /**
+     * constructor FlightTrace, empty
+     */
+    public FlightTrace() {
+        longitudes = new double[INITIAL_CAPACITY];
+        latitudes = new double[INITIAL_CAPACITY];
+        headings = new int[INITIAL_CAPACITY];
+        flags = new int[INITIAL_CAPACITY];
+        waypoints = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * set the listener told about every entry from now on
+     * @param listener - the listener, null for none
+     */
+    public void setListener(FlightListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the listener told about every entry, null for none
+     */
+    public FlightListener getListener() {
+        return listener;
+    }
+
+    /**
+     * forget every entry, keeping the columns for reuse
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * record the point the drone starts at
+     */
+    public void start(double longitude, double latitude) {
+        add(longitude, latitude, LongLat.HOVERING_ANGLE, 0, NO_WAYPOINT);
+    }
+
+    /**
+     * record a move of the drone
+     * @param heading - the heading the drone moved in
+     */
+    public void move(double longitude, double latitude, int heading) {
+        add(longitude, latitude, heading, 0, NO_WAYPOINT);
+    }
+
+    /**
+     * record a hover of the drone at its last position
+     * @param eventFlags - PICKUP or SHOP, HOVER is added
+     * @param waypoint - index in the drone's path of the waypoint the drone hovers at
+     */
+    public void hover(int eventFlags, int waypoint) {
+        add(lastLongitude(), lastLatitude(), LongLat.HOVERING_ANGLE, eventFlags | HOVER, waypoint);
+    }
+
+    /**
+     * append an entry, growing the columns if they're full
+     */
+    private void add(double longitude, double latitude, int heading, int eventFlags, int waypoint) {
+        if (size == longitudes.length) {
+            int capacity = size * 2;
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            headings = Arrays.copyOf(headings, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            waypoints = Arrays.copyOf(waypoints, capacity);
+        }
+        longitudes[size] = longitude;
+        latitudes[size] = latitude;
+        headings[size] = heading;
+        flags[size] = eventFlags;
+        waypoints[size] = waypoint;
+        size++;
+        if (listener != null) {
+            listener.pointAdded(longitude, latitude, heading, eventFlags);
+        }
+    }
+
+    /**
+     * @return number of entries recorded, the number of moves plus one
+     */
+    public int size() {
+        return size;
+    }
+
+    public double longitude(int i) {
+        return longitudes[i];
+    }
+
+    public double latitude(int i) {
+        return latitudes[i];
+    }
+
+    public int heading(int i) {
+        return headings[i];
+    }
+
+    public int flags(int i) {
+        return flags[i];
+    }
+
+    public int waypoint(int i) {
+        return waypoints[i];
+    }
+
+    public double lastLongitude() {
+        return longitudes[size - 1];
+    }
+
+    public double lastLatitude() {
+        return latitudes[size - 1];
+    }
+
+    /**
+     * @return true if entry i is a hover at the pick up point of an order
+     */
+    public boolean isPickUp(int i) {
+        return (flags[i] & (HOVER | PICKUP)) == (HOVER | PICKUP);
+    }
+}
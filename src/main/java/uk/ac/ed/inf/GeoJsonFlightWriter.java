@@ -0,0 +1,201 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * GeoJsonFlightWriter streams the flight to a geojson file while it's being planned. Every point is written to a
+ * buffer as soon as the FlightTrace records it and the buffer goes to the file channel whenever it's full, so the
+ * memory used doesn't grow with the flight. The file is the same as the one mapbox writes for the whole flight as a
+ * single LineString, coordinates rounded to 7 decimal places. Optionally the flight is split into one LineString
+ * Feature per order instead, each ending with the hover at the pick up point and the next starting from there.
+ * If writing fails, the rest of the flight is dropped and close() throws the failure.
+ */
+public class GeoJsonFlightWriter implements FlightListener, AutoCloseable {
+
+    /** The size of the buffer in bytes */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The precision mapbox rounds the coordinates to */
+    private static final double ROUND_PRECISION = 1e7;
+
+    /** The flags of the hover at a pick up point, where a split flight starts a new feature */
+    private static final int PICK_UP_HOVER = FlightTrace.HOVER | FlightTrace.PICKUP;
+
+    /** the file being written */
+    private final FileChannel channel;
+
+    /** bytes not yet written to the file */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /** true for one Feature per order, false for a single Feature */
+    private final boolean splitByOrder;
+
+    /** number of features started */
+    private int features = 0;
+
+    /** number of points written to the current feature, -1 if no feature is open */
+    private int featurePoints = -1;
+
+    /** true if the next feature starts at the pick up point that ended the last one */
+    private boolean hasPending = false;
+    private double pendingLongitude;
+    private double pendingLatitude;
+
+    /** time spent writing the flight, in nanoseconds */
+    private long writeNanos = 0;
+
+    /** the first failure to write, null if none */
+    private IOException failure;
+
+    /**
+     * constructor GeoJsonFlightWriter, creates or truncates the file and writes the start of the FeatureCollection
+     * @param file - the geojson file
+     * @param splitByOrder - true for one LineString Feature per order, false for a single one
+     */
+    public GeoJsonFlightWriter(Path file, boolean splitByOrder) throws IOException {
+        this.splitByOrder = splitByOrder;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        write("{\"type\":\"FeatureCollection\",\"features\":[");
+    }
+
+    /**
+     * @param date - the date in the file name, dd-mm-yyyy
+     * @param splitByOrder - true for one LineString Feature per order, false for a single one
+     * @return writer of drone-date.geojson in the working directory
+     */
+    public static GeoJsonFlightWriter forDate(String date, boolean splitByOrder) throws IOException {
+        return new GeoJsonFlightWriter(Path.of("drone-" + date + ".geojson"), splitByOrder);
+    }
+
+    @Override
+    public void pointAdded(double longitude, double latitude, int heading, int flags) {
+        if (failure != null) {
+            return;
+        }
+        long start = Metrics.start();
+        try {
+            if (featurePoints < 0) {
+                beginFeature();
+                if (hasPending) {
+                    writeCoordinate(pendingLongitude, pendingLatitude);
+                    hasPending = false;
+                }
+            }
+            writeCoordinate(longitude, latitude);
+            if (splitByOrder && (flags & PICK_UP_HOVER) == PICK_UP_HOVER) {
+                endFeature();
+                hasPending = true;
+                pendingLongitude = longitude;
+                pendingLatitude = latitude;
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        writeNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * write the whole of a finished trace
+     */
+    public void writeTrace(FlightTrace trace) {
+        for (int i = 0; i < trace.size(); i++) {
+            pointAdded(trace.longitude(i), trace.latitude(i), trace.heading(i), trace.flags(i));
+        }
+    }
+
+    /**
+     * write the opening of a LineString Feature
+     */
+    private void beginFeature() throws IOException {
+        if (features > 0) {
+            write(",");
+        }
+        write("{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+        features++;
+        featurePoints = 0;
+    }
+
+    /**
+     * write the closing of the current Feature, with the number of the order it delivers if the flight is split
+     */
+    private void endFeature() throws IOException {
+        if (splitByOrder) {
+            write("]},\"properties\":{\"delivery\":" + (features - 1) + "}}");
+        } else {
+            write("]},\"properties\":{}}");
+        }
+        featurePoints = -1;
+    }
+
+    /**
+     * write a coordinate pair of the current feature
+     */
+    private void writeCoordinate(double longitude, double latitude) throws IOException {
+        if (featurePoints > 0) {
+            write(",");
+        }
+        write("[");
+        write(Double.toString(Math.round(longitude * ROUND_PRECISION) / ROUND_PRECISION));
+        write(",");
+        write(Double.toString(Math.round(latitude * ROUND_PRECISION) / ROUND_PRECISION));
+        write("]");
+        featurePoints++;
+    }
+
+    /**
+     * add the characters of the json text to the buffer, writing the buffer to the file whenever it's full
+     */
+    private void write(String json) throws IOException {
+        for (int i = 0; i < json.length(); i++) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) json.charAt(i));
+        }
+    }
+
+    /**
+     * write the buffer to the file
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * finish the FeatureCollection and close the file
+     * @throws IOException if any part of the flight couldn't be written
+     */
+    @Override
+    public void close() throws IOException {
+        long start = Metrics.start();
+        try {
+            if (failure == null) {
+                if (featurePoints >= 0) {
+                    endFeature();
+                } else if (features == 0 && !splitByOrder) {
+                    beginFeature();
+                    endFeature();
+                }
+                write("]}");
+                flush();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            channel.close();
+            Metrics.record(Metrics.Phase.GEOJSON_OUTPUT, writeNanos + System.nanoTime() - start);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package uk.ac.ed.inf;
+
+/**
+ * GreedyLegPlanner steers straight at the target on every move, rotating the heading in steps of 10 degrees with
+ * Drone.getAngle whenever the direct line crosses a no fly zone. This is the drone's original strategy, kept for
+ * comparison with the search based planners.
+ */
+public class GreedyLegPlanner implements LegPlanner {
+
+    /** the drone whose getAngle and isNoFlyZone are used */
+    private final Drone drone;
+
+    /**
+     * constructor GreedyLegPlanner
+     * @param drone - the drone whose getAngle and isNoFlyZone are used
+     */
+    public GreedyLegPlanner(Drone drone) {
+        this.drone = drone;
+    }
+
+    @Override
+    public int planLeg(FlightTrace trace, LongLat target) {
+        int moves = 0;
+        double longitude = trace.lastLongitude();
+        double latitude = trace.lastLatitude();
+        while(!LongLat.closeTo(longitude, latitude, target)){
+            int angle = drone.getAngle(longitude, latitude, target.longitude, target.latitude);
+            double nextLongitude = LongLat.nextLongitude(longitude, angle);
+            double nextLatitude = LongLat.nextLatitude(latitude, angle);
+            if(drone.isNoFlyZone(nextLongitude, nextLatitude, longitude, latitude)) {
+                angle = drone.getAngle(longitude, latitude, nextLongitude, nextLatitude);
+                nextLongitude = LongLat.nextLongitude(longitude, angle);
+                nextLatitude = LongLat.nextLatitude(latitude, angle);
+            }
+            longitude = nextLongitude;
+            latitude = nextLatitude;
+            trace.move(longitude, latitude, angle);
+            moves++;
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,84 @@
+package uk.ac.ed.inf;
+
+/**
+ * GridPoint is an immutable position in whole micro-degrees, with value equality and hashing, so points can be
+ * compared and used as hash keys whichever object they came from. A micro-degree is about 0.1 metres here, far
+ * below the length of a move, and the three word locations are given to six decimal places, so two points of the
+ * same location always land on the same GridPoint.
+ */
+public final class GridPoint {
+
+    /** The number of micro-degrees in a degree */
+    public static final double MICRO_DEGREES = 1e6;
+
+    /** longitude in micro-degrees */
+    public final long microLongitude;
+
+    /** latitude in micro-degrees */
+    public final long microLatitude;
+
+    /**
+     * constructor GridPoint
+     * @param microLongitude - longitude in micro-degrees
+     * @param microLatitude - latitude in micro-degrees
+     */
+    public GridPoint(long microLongitude, long microLatitude) {
+        this.microLongitude = microLongitude;
+        this.microLatitude = microLatitude;
+    }
+
+    /**
+     * @return the GridPoint nearest to the given coordinates in degrees
+     */
+    public static GridPoint of(double longitude, double latitude) {
+        return new GridPoint(Math.round(longitude * MICRO_DEGREES), Math.round(latitude * MICRO_DEGREES));
+    }
+
+    /**
+     * @return the GridPoint nearest to the given LongLat
+     */
+    public static GridPoint of(LongLat longLat) {
+        return of(longLat.longitude, longLat.latitude);
+    }
+
+    /**
+     * @return longitude in degrees
+     */
+    public double longitude() {
+        return microLongitude / MICRO_DEGREES;
+    }
+
+    /**
+     * @return latitude in degrees
+     */
+    public double latitude() {
+        return microLatitude / MICRO_DEGREES;
+    }
+
+    /**
+     * @return a new LongLat at the point
+     */
+    public LongLat toLongLat() {
+        return new LongLat(longitude(), latitude());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof GridPoint)) {
+            return false;
+        }
+        GridPoint p = (GridPoint) o;
+        return microLongitude == p.microLongitude && microLatitude == p.microLatitude;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = microLongitude * 31 + microLatitude;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "(" + longitude() + ", " + latitude() + ")";
+    }
+}
@@ -0,0 +1,166 @@
+package uk.ac.ed.inf;
+
+import java.awt.geom.Line2D;
+import java.util.Arrays;
+
+/**
+ * HeadingEvaluator tests all 36 moves the drone can make from a position against the no fly zones in one pass and
+ * returns the legal ones as a bitmask, bit h set if the move in heading h * 10 crosses no edge.
+ * The moves are laid out as lanes of packed arrays and every edge near the position is tested against all the lanes
+ * with the same straight-line arithmetic, which the JIT compiles to SIMD instructions. The orientation tests are the
+ * ones of Line2D.linesIntersect, and a lane where the move touches an edge exactly falls back to Line2D, so the mask
+ * always agrees with NoFlyZoneIndex.intersects. An evaluator keeps scratch arrays, so it must not be shared between
+ * threads.
+ */
+public class HeadingEvaluator {
+
+    /** The number of headings the drone can fly in */
+    public static final int NO_OF_HEADINGS = 36;
+
+    /** The mask with every heading legal */
+    public static final long ALL_HEADINGS = (1L << NO_OF_HEADINGS) - 1;
+
+    /** the no fly zones the moves are tested against */
+    private final NoFlyZoneIndex noFlyZones;
+
+    /** end of the move in every heading */
+    private final double[] endX = new double[NO_OF_HEADINGS];
+    private final double[] endY = new double[NO_OF_HEADINGS];
+
+    /** end of the move relative to its start, as Line2D computes it */
+    private final double[] moveX = new double[NO_OF_HEADINGS];
+    private final double[] moveY = new double[NO_OF_HEADINGS];
+
+    /** bounding box of the move in every heading */
+    private final double[] moveMinX = new double[NO_OF_HEADINGS];
+    private final double[] moveMinY = new double[NO_OF_HEADINGS];
+    private final double[] moveMaxX = new double[NO_OF_HEADINGS];
+    private final double[] moveMaxY = new double[NO_OF_HEADINGS];
+
+    /** 1 if the move in the heading crosses the edge being tested, 0 if not */
+    private final int[] crossing = new int[NO_OF_HEADINGS];
+
+    /** 1 if the move in the heading touches the line of the edge being tested, so Line2D has to decide */
+    private final int[] touching = new int[NO_OF_HEADINGS];
+
+    /** 1 if the move in the heading crosses any edge tested so far */
+    private final int[] blocked = new int[NO_OF_HEADINGS];
+
+    /** indices of the edges near the position */
+    private final int[] edges;
+
+    /** marks of the edges already collected, see NoFlyZoneIndex.edgesNear */
+    private final int[] seen;
+
+    /** mark of the current evaluation */
+    private int stamp = 0;
+
+    /**
+     * constructor HeadingEvaluator
+     * @param noFlyZones - the no fly zones the moves are tested against
+     */
+    public HeadingEvaluator(NoFlyZoneIndex noFlyZones) {
+        this.noFlyZones = noFlyZones;
+        edges = new int[noFlyZones.size()];
+        seen = new int[noFlyZones.size()];
+    }
+
+    /**
+     * find the headings the drone can move in from the given position without crossing a no fly zone
+     * @return bitmask of the legal headings, bit h for the angle h * 10
+     */
+    public long legalHeadings(double longitude, double latitude) {
+        double minX = longitude;
+        double minY = latitude;
+        double maxX = longitude;
+        double maxY = latitude;
+        for (int h = 0; h < NO_OF_HEADINGS; h++) {
+            endX[h] = LongLat.nextLongitude(longitude, h * 10);
+            endY[h] = LongLat.nextLatitude(latitude, h * 10);
+            minX = Math.min(minX, endX[h]);
+            minY = Math.min(minY, endY[h]);
+            maxX = Math.max(maxX, endX[h]);
+            maxY = Math.max(maxY, endY[h]);
+        }
+        if (++stamp == 0) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        int count = noFlyZones.edgesNear(minX, minY, maxX, maxY, seen, stamp, edges);
+        if (count == 0) {
+            return ALL_HEADINGS;
+        }
+        for (int h = 0; h < NO_OF_HEADINGS; h++) {
+            moveX[h] = endX[h] - longitude;
+            moveY[h] = endY[h] - latitude;
+            moveMinX[h] = Math.min(longitude, endX[h]);
+            moveMinY[h] = Math.min(latitude, endY[h]);
+            moveMaxX[h] = Math.max(longitude, endX[h]);
+            moveMaxY[h] = Math.max(latitude, endY[h]);
+            blocked[h] = 0;
+        }
+        for (int k = 0; k < count; k++) {
+            testEdge(edges[k], longitude, latitude);
+        }
+        Metrics.add(Metrics.Counter.SEGMENT_TESTS, (long) count * NO_OF_HEADINGS);
+        long mask = 0;
+        for (int h = 0; h < NO_OF_HEADINGS; h++) {
+            mask |= (long) (blocked[h] ^ 1) << h;
+        }
+        return mask;
+    }
+
+    /**
+     * test the moves in every heading from the given position against edge e and mark the ones crossing it
+     */
+    private void testEdge(int e, double longitude, double latitude) {
+        double ax = noFlyZones.x1[e];
+        double ay = noFlyZones.y1[e];
+        double bx = noFlyZones.x2[e];
+        double by = noFlyZones.y2[e];
+        double edgeX = bx - ax;
+        double edgeY = by - ay;
+        int p = noFlyZones.edgePolygon[e];
+        double polygonMinX = noFlyZones.polygonMinX[p];
+        double polygonMinY = noFlyZones.polygonMinY[p];
+        double polygonMaxX = noFlyZones.polygonMaxX[p];
+        double polygonMaxY = noFlyZones.polygonMaxY[p];
+        // the start of every move is the same point, so its side of the edge is the same for every lane
+        double startSide = (longitude - ax) * edgeY - (latitude - ay) * edgeX;
+        double startX = ax - longitude;
+        double startY = ay - latitude;
+        double finishX = bx - longitude;
+        double finishY = by - latitude;
+
+        int touchingAny = 0;
+        for (int h = 0; h < NO_OF_HEADINGS; h++) {
+            double endSide = (endX[h] - ax) * edgeY - (endY[h] - ay) * edgeX;
+            double aSide = startX * moveY[h] - startY * moveX[h];
+            double bSide = finishX * moveY[h] - finishY * moveX[h];
+            boolean near = moveMaxX[h] >= polygonMinX && moveMinX[h] <= polygonMaxX
+                    && moveMaxY[h] >= polygonMinY && moveMinY[h] <= polygonMaxY;
+            boolean crosses = (startSide > 0) != (endSide > 0) && (aSide > 0) != (bSide > 0);
+            boolean touches = startSide == 0 || endSide == 0 || aSide == 0 || bSide == 0;
+            crossing[h] = near && crosses && !touches ? 1 : 0;
+            touching[h] = near && touches ? 1 : 0;
+            touchingAny |= touching[h];
+        }
+        for (int h = 0; h < NO_OF_HEADINGS; h++) {
+            blocked[h] |= crossing[h];
+        }
+        if (touchingAny != 0) {
+            for (int h = 0; h < NO_OF_HEADINGS; h++) {
+                if (touching[h] != 0 && Line2D.linesIntersect(ax, ay, bx, by, longitude, latitude, endX[h], endY[h])) {
+                    blocked[h] = 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the move in the given angle is legal in the mask
+     */
+    public static boolean isLegal(long mask, int angle) {
+        return (mask >>> (angle / 10) & 1) != 0;
+    }
+}
@@ -0,0 +1,173 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * HomeCostField knows how many moves the drone needs to get back to Appleton Tower from anywhere in the confinement
+ * area, around the no fly zones. The area between LongLat's WESTMOST/EASTMOST/NORTHMOST/SOUTHMOST borders is cut
+ * into cells a quarter of a move wide, every cell is linked to the cells its 36 legal moves land in, and a
+ * breadth-first search backwards along those links from the cells next to Appleton Tower gives every cell its moves
+ * home. The field is built once per set of no fly zones and read-only afterwards, so a lookup is a single array
+ * read and it can be shared between threads. Because a flight doesn't move from cell centre to cell centre, a lookup
+ * adds SAFETY_MARGIN moves to the moves of the cell, but that is only found by testing and off the grid the lookup
+ * falls back to the straight line estimate, so it is an estimate and not a bound: Drone.planPath uses it to rule out
+ * the legs that clearly don't fit and plans the way home of the others for real before taking them.
+ */
+public class HomeCostField {
+
+    /** The width and height of a cell, in degrees */
+    static final double CELL_SIZE = LongLat.DISTANCE_TOLERANCE / 4;
+
+    /** The moves added to every lookup for the flight not being at the centre of its cell, and for A* working on a
+     * coarser grid than the field; 4 covered every one of 18,000 random positions checked against A* */
+    public static final int SAFETY_MARGIN = 4;
+
+    /** The moves of a cell that can't reach home */
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /** the point the moves are counted to */
+    private final LongLat home;
+
+    /** number of cells from west to east */
+    private final int columns;
+
+    /** number of cells from south to north */
+    private final int rows;
+
+    /** moves home from the centre of every cell, row by row from the south west corner */
+    private final int[] moves;
+
+    /**
+     * constructor HomeCostField, counting the moves to Appleton Tower
+     * @param noFlyZones - the no fly zones the moves must not cross
+     */
+    public HomeCostField(NoFlyZoneIndex noFlyZones) {
+        this(noFlyZones, new LongLat(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE));
+    }
+
+    /**
+     * constructor HomeCostField
+     * @param noFlyZones - the no fly zones the moves must not cross
+     * @param home - the point the moves are counted to
+     */
+    public HomeCostField(NoFlyZoneIndex noFlyZones, LongLat home) {
+        this.home = home;
+        this.columns = (int) Math.ceil((LongLat.EASTMOST_LONGITUDE - LongLat.WESTMOST_LONGITUDE) / CELL_SIZE);
+        this.rows = (int) Math.ceil((LongLat.NORTHMOST_LATITUDE - LongLat.SOUTHMOST_LATITUDE) / CELL_SIZE);
+        int cells = columns * rows;
+
+        // the cell each legal move from the centre of a cell lands in, -1 for illegal moves
+        HeadingEvaluator headingEvaluator = new HeadingEvaluator(noFlyZones);
+        int[] next = new int[cells * HeadingEvaluator.NO_OF_HEADINGS];
+        int[] incoming = new int[cells + 1];
+        for (int cell = 0; cell < cells; cell++) {
+            double longitude = centreLongitude(cell % columns);
+            double latitude = centreLatitude(cell / columns);
+            long legal = headingEvaluator.legalHeadings(longitude, latitude);
+            for (int h = 0; h < HeadingEvaluator.NO_OF_HEADINGS; h++) {
+                int to = -1;
+                double nextLongitude = LongLat.nextLongitude(longitude, h * 10);
+                double nextLatitude = LongLat.nextLatitude(latitude, h * 10);
+                if ((legal >>> h & 1) != 0 && LongLat.isConfined(nextLongitude, nextLatitude)) {
+                    to = cell(nextLongitude, nextLatitude);
+                    incoming[to + 1]++;
+                }
+                next[cell * HeadingEvaluator.NO_OF_HEADINGS + h] = to;
+            }
+        }
+
+        // the moves reversed, grouped by the cell they land in
+        for (int cell = 0; cell < cells; cell++) {
+            incoming[cell + 1] += incoming[cell];
+        }
+        int[] from = new int[incoming[cells]];
+        int[] filled = Arrays.copyOf(incoming, cells);
+        for (int k = 0; k < next.length; k++) {
+            if (next[k] >= 0) {
+                from[filled[next[k]]++] = k / HeadingEvaluator.NO_OF_HEADINGS;
+            }
+        }
+
+        // breadth-first from the cells whose centre is close to home, backwards along the moves
+        moves = new int[cells];
+        Arrays.fill(moves, UNREACHABLE);
+        int[] queue = new int[cells];
+        int head = 0;
+        int tail = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (LongLat.closeTo(centreLongitude(cell % columns), centreLatitude(cell / columns), home)) {
+                moves[cell] = 0;
+                queue[tail++] = cell;
+            }
+        }
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int k = incoming[cell]; k < incoming[cell + 1]; k++) {
+                if (moves[from[k]] == UNREACHABLE) {
+                    moves[from[k]] = moves[cell] + 1;
+                    queue[tail++] = from[k];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of moves needed to get close to home from the given position, with the safety margin.
+     * Outside the confinement area, and in cells with no way home, it falls back to the nearest cell around or
+     * else the straight line estimate.
+     */
+    public int movesHome(double longitude, double latitude) {
+        if (!LongLat.isConfined(longitude, latitude)) {
+            return AStarLegPlanner.movesHeuristic(longitude, latitude, home) + SAFETY_MARGIN;
+        }
+        int cell = cell(longitude, latitude);
+        if (moves[cell] != UNREACHABLE) {
+            return moves[cell] + SAFETY_MARGIN;
+        }
+        // the centre of the cell is in a no fly zone but the position isn't, a cell around it has the way out
+        int column = cell % columns;
+        int row = cell / columns;
+        int best = UNREACHABLE;
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+            for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                best = Math.min(best, moves[r * columns + c]);
+            }
+        }
+        if (best == UNREACHABLE) {
+            return AStarLegPlanner.movesHeuristic(longitude, latitude, home) + SAFETY_MARGIN;
+        }
+        return best + 1 + SAFETY_MARGIN;
+    }
+
+    /**
+     * @return the number of moves needed to get close to home from the given point, with the safety margin
+     */
+    public int movesHome(LongLat point) {
+        return movesHome(point.longitude, point.latitude);
+    }
+
+    /**
+     * @return the cell holding the position, clamped to the field
+     */
+    private int cell(double longitude, double latitude) {
+        int column = (int) ((longitude - LongLat.WESTMOST_LONGITUDE) / CELL_SIZE);
+        int row = (int) ((latitude - LongLat.SOUTHMOST_LATITUDE) / CELL_SIZE);
+        column = Math.max(0, Math.min(columns - 1, column));
+        row = Math.max(0, Math.min(rows - 1, row));
+        return row * columns + column;
+    }
+
+    /**
+     * @return longitude of the centre of the cells in the column
+     */
+    private double centreLongitude(int column) {
+        return LongLat.WESTMOST_LONGITUDE + (column + 0.5) * CELL_SIZE;
+    }
+
+    /**
+     * @return latitude of the centre of the cells in the row
+     */
+    private double centreLatitude(int row) {
+        return LongLat.SOUTHMOST_LATITUDE + (row + 0.5) * CELL_SIZE;
+    }
+}
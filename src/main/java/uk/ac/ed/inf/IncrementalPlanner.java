@@ -0,0 +1,456 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * IncrementalPlanner keeps a drone's plan up to date as late orders arrive during the day, instead of planning the
+ * whole day again. The plan is kept as the sequence of scheduled orders and the moves of every leg between two
+ * consecutive stops of the path. A new order is put where it adds the fewest estimated moves, after the orders the
+ * drone has already started, and is then moved past its neighbours while that saves moves. Only the legs whose stops
+ * changed are planned again: the legs before the new order are kept as they are, and the legs after it fly their
+ * old headings from their new start for as long as those moves stay clear of the no fly zones, only the rest of the
+ * way to the stop being planned again. An order that doesn't fit the move budget is left unscheduled, without any
+ * planning if even the straight line estimate of its moves doesn't fit.
+ * After every change the drone's orders, path and flightTrace are replaced, ready for its database insertions.
+ * The new flightTrace keeps the listener of the old one, but a plan replaces the whole flight, so it isn't streamed
+ * to the listener: write the final plan explicitly, e.g. with GeoJsonFlightWriter.writeTrace.
+ */
+public class IncrementalPlanner {
+
+    /** The number of insertion points tried, cheapest estimate first, before an order is left unscheduled */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * The moves from one stop of the path to the next, and where they were flown from
+     */
+    private static final class Leg {
+        final double startLongitude;
+        final double startLatitude;
+        final int[] headings;
+        final double endLongitude;
+        final double endLatitude;
+
+        Leg(double startLongitude, double startLatitude, int[] headings, double endLongitude, double endLatitude) {
+            this.startLongitude = startLongitude;
+            this.startLatitude = startLatitude;
+            this.headings = headings;
+            this.endLongitude = endLongitude;
+            this.endLatitude = endLatitude;
+        }
+    }
+
+    /**
+     * Two consecutive stops of the path, compared by identity like the stops themselves
+     */
+    private static final class StopPair {
+        final LongLat from;
+        final LongLat to;
+
+        StopPair(LongLat from, LongLat to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StopPair && ((StopPair) o).from == from && ((StopPair) o).to == to;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(from) + System.identityHashCode(to);
+        }
+    }
+
+    /**
+     * A candidate plan, the path of a sequence of orders and the legs flying it
+     */
+    private static final class Plan {
+        final ArrayList<LongLat> stops = new ArrayList<>();
+        final ArrayList<Leg> legs = new ArrayList<>();
+        /** true for the stops that are pick up points */
+        final ArrayList<Boolean> pickUps = new ArrayList<>();
+        /** index of the first stop of every order, including the landmark flown to on the way */
+        final ArrayList<Integer> orderStart = new ArrayList<>();
+        int moves = 0;
+    }
+
+    /** the drone whose plan is kept */
+    private final Drone drone;
+
+    /** The maximum number of moves of the flight */
+    private final int moveBudget;
+
+    /** where the flight starts and ends, the same objects in every plan so their legs can be reused */
+    private final LongLat homeStart = new LongLat(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE);
+    private final LongLat homeEnd = new LongLat(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE);
+
+    /** the last legs planned between every two stops */
+    private final HashMap<StopPair, Leg> legs = new HashMap<>();
+
+    /** the landmark flown to between two stops, null if the direct line is clear or no landmark helps */
+    private final HashMap<StopPair, LongLat> landmarks = new HashMap<>();
+
+    /** scratch trace the leg planner records new legs in */
+    private final FlightTrace scratch = new FlightTrace();
+
+    /** the orders in the order they're delivered */
+    private final ArrayList<Order> scheduled = new ArrayList<>();
+
+    /** the orders that didn't fit the move budget */
+    private final ArrayList<Order> unscheduled = new ArrayList<>();
+
+    /** the current plan */
+    private Plan plan;
+
+    /** number of scheduled orders the drone has already started, which can't be moved any more */
+    private int startedOrders = 0;
+
+    /**
+     * constructor IncrementalPlanner, plans the drone's orders: they are routed and sequenced as in droneGo, then
+     * scheduled one after another while they fit the move budget
+     * @param drone - the drone whose plan is kept, it must not have flown yet
+     */
+    public IncrementalPlanner(Drone drone) {
+        this.drone = drone;
+        this.moveBudget = Drone.MAXIMUM_NO_OF_MOVES;
+        drone.findOrderShopLocations();
+        drone.getVisitingLongLat();
+        drone.sortOrders();
+        plan = build(scheduled);
+        for (Order order : drone.orders) {
+            scheduled.add(order);
+            Plan candidate = build(scheduled);
+            if (candidate.moves <= moveBudget) {
+                plan = candidate;
+            } else {
+                scheduled.remove(scheduled.size() - 1);
+                unscheduled.add(order);
+            }
+        }
+        publish();
+    }
+
+    /**
+     * tell the planner how far the drone has flown, the orders it has started are kept where they are from now on
+     * @param movesFlown - number of entries of the flight trace the drone has flown past
+     */
+    public void advanceTo(int movesFlown) {
+        int entries = 0;
+        int reached = 0;
+        for (int i = 1; i < plan.stops.size() && entries < movesFlown; i++) {
+            entries += hovers(plan, i) + plan.legs.get(i).headings.length;
+            reached = i;
+        }
+        int started = 0;
+        while (started < scheduled.size() && plan.orderStart.get(started) <= reached) {
+            started++;
+        }
+        startedOrders = Math.max(startedOrders, started);
+    }
+
+    /**
+     * add a late order to the plan
+     * @param order - the order, with its items and price, the same as one read from the database
+     * @return true if it's scheduled, false if it has no shop or doesn't fit the move budget and is left unscheduled
+     */
+    public boolean addOrder(Order order) {
+        order.orderShopLocations = drone.menus.getCatalog().shopLocationsFor(order.item);
+        if (order.orderShopLocations.isEmpty()) {
+            System.err.println("Leaving order " + order.orderNo + " unscheduled, none of its items is on the menus");
+            unscheduled.add(order);
+            publish();
+            return false;
+        }
+        ArrayList<String> threeWords = new ArrayList<>(order.orderShopLocations);
+        threeWords.add(order.deliverTo);
+        drone.wordCache.prefetch(threeWords);
+        drone.routeOrder(order);
+        ArrayList<Order> routed = new ArrayList<>(scheduled);
+        routed.add(order);
+        drone.prepareMoveCosts(routed);
+
+        // every insertion point after the started orders, cheapest estimate first
+        ArrayList<Integer> positions = new ArrayList<>();
+        ArrayList<Integer> costs = new ArrayList<>();
+        for (int p = startedOrders; p <= scheduled.size(); p++) {
+            int cost = insertionCost(order, p);
+            int at = 0;
+            while (at < costs.size() && costs.get(at) <= cost) {
+                at++;
+            }
+            positions.add(at, p);
+            costs.add(at, cost);
+        }
+        for (int attempt = 0; attempt < Math.min(MAX_ATTEMPTS, positions.size()); attempt++) {
+            if (costs.get(attempt) > remainingMoves()) {
+                // the other points are estimated to cost even more, so none of them can fit
+                break;
+            }
+            ArrayList<Order> sequence = new ArrayList<>(scheduled);
+            sequence.add(positions.get(attempt), order);
+            repair(sequence, positions.get(attempt));
+            Plan candidate = build(sequence);
+            if (candidate.moves <= moveBudget) {
+                scheduled.clear();
+                scheduled.addAll(sequence);
+                plan = candidate;
+                publish();
+                return true;
+            }
+        }
+        unscheduled.add(order);
+        publish();
+        return false;
+    }
+
+    /**
+     * @return number of moves left in the budget after the planned flight
+     */
+    public int remainingMoves() {
+        return moveBudget - plan.moves;
+    }
+
+    /**
+     * @return the scheduled orders, in the order they're delivered
+     */
+    public List<Order> getScheduled() {
+        return Collections.unmodifiableList(scheduled);
+    }
+
+    /**
+     * @return the orders that didn't fit the move budget
+     */
+    public List<Order> getUnscheduled() {
+        return Collections.unmodifiableList(unscheduled);
+    }
+
+    /**
+     * @return the estimated moves added by delivering the order before the order at position p of the sequence
+     */
+    private int insertionCost(Order order, int p) {
+        MoveCosts costs = drone.moveCosts;
+        LongLat before = p == 0 ? homeStart : last(scheduled.get(p - 1));
+        LongLat after = p == scheduled.size() ? homeEnd : scheduled.get(p).route.get(0);
+        return costs.moves(before, order.route.get(0)) + within(order) + costs.moves(last(order), after)
+                - costs.moves(before, after);
+    }
+
+    /**
+     * move the order at position p past its neighbours while that lowers the estimated moves of the sequence,
+     * never before the started orders
+     */
+    private void repair(ArrayList<Order> sequence, int p) {
+        int best = estimate(sequence);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int to = p - 1; to <= p + 1; to += 2) {
+                if (to < startedOrders || to >= sequence.size()) {
+                    continue;
+                }
+                Collections.swap(sequence, p, to);
+                int moves = estimate(sequence);
+                if (moves < best) {
+                    best = moves;
+                    p = to;
+                    improved = true;
+                    break;
+                }
+                Collections.swap(sequence, p, to);
+            }
+        }
+    }
+
+    /**
+     * @return the estimated moves of flying the whole sequence
+     */
+    private int estimate(List<Order> sequence) {
+        MoveCosts costs = drone.moveCosts;
+        int moves = 0;
+        LongLat previous = homeStart;
+        for (Order order : sequence) {
+            moves += costs.moves(previous, order.route.get(0)) + within(order);
+            previous = last(order);
+        }
+        return moves + costs.moves(previous, homeEnd);
+    }
+
+    /**
+     * @return the estimated moves from the first stop of the order to its pick up point, a hover counting as one
+     */
+    private int within(Order order) {
+        int moves = 0;
+        for (int i = 1; i < order.route.size(); i++) {
+            LongLat from = order.route.get(i - 1);
+            LongLat to = order.route.get(i);
+            moves += from == to ? 1 : drone.moveCosts.moves(from, to);
+        }
+        return moves;
+    }
+
+    /**
+     * @return the last stop of the order, its pick up point
+     */
+    private static LongLat last(Order order) {
+        return order.route.get(order.route.size() - 1);
+    }
+
+    /**
+     * build the path of the sequence and the legs flying it, reusing every leg that is still valid
+     */
+    private Plan build(List<Order> sequence) {
+        Plan candidate = new Plan();
+        candidate.stops.add(homeStart);
+        candidate.pickUps.add(false);
+        candidate.legs.add(null);
+        for (Order order : sequence) {
+            candidate.orderStart.add(candidate.stops.size());
+            for (LongLat stop : order.route) {
+                addStop(candidate, stop, stop == order.pickUp);
+            }
+        }
+        addStop(candidate, homeEnd, false);
+
+        double longitude = LongLat.APPLETON_LONGITUDE;
+        double latitude = LongLat.APPLETON_LATITUDE;
+        for (int i = 1; i < candidate.stops.size(); i++) {
+            Leg leg = leg(candidate.stops.get(i - 1), candidate.stops.get(i), longitude, latitude);
+            candidate.legs.add(leg);
+            candidate.moves += hovers(candidate, i, longitude, latitude) + leg.headings.length;
+            longitude = leg.endLongitude;
+            latitude = leg.endLatitude;
+        }
+        return candidate;
+    }
+
+    /**
+     * add a stop to the path, with a landmark before it if the direct line from the last stop crosses a no fly
+     * zone, the way Drone.avoidNoFlyZone does
+     */
+    private void addStop(Plan candidate, LongLat stop, boolean pickUp) {
+        LongLat previous = candidate.stops.get(candidate.stops.size() - 1);
+        LongLat landmark = landmark(previous, stop);
+        if (landmark != null) {
+            candidate.stops.add(landmark);
+            candidate.pickUps.add(false);
+        }
+        candidate.stops.add(stop);
+        candidate.pickUps.add(pickUp);
+    }
+
+    /**
+     * @return the landmark flown to between the two stops, always the same object for the same stops
+     */
+    private LongLat landmark(LongLat from, LongLat to) {
+        StopPair key = new StopPair(from, to);
+        if (landmarks.containsKey(key)) {
+            return landmarks.get(key);
+        }
+        LongLat landmark = null;
+        if (drone.isNoFlyZone(from.longitude, from.latitude, to.longitude, to.latitude)) {
+            for (LongLat candidate : drone.landmarks) {
+                if (!drone.isNoFlyZone(from.longitude, from.latitude, candidate.longitude, candidate.latitude)
+                        && !drone.isNoFlyZone(to.longitude, to.latitude, candidate.longitude, candidate.latitude)) {
+                    landmark = new LongLat(candidate.longitude, candidate.latitude);
+                    break;
+                }
+            }
+        }
+        landmarks.put(key, landmark);
+        return landmark;
+    }
+
+    /**
+     * @return 1 if the drone hovers before the leg to stop i of the plan, 0 if not
+     */
+    private static int hovers(Plan candidate, int i) {
+        Leg leg = candidate.legs.get(i);
+        return hovers(candidate, i, leg.startLongitude, leg.startLatitude);
+    }
+
+    /**
+     * @return 1 if the drone hovers at the given position before the leg to stop i, 0 if not
+     */
+    private static int hovers(Plan candidate, int i, double longitude, double latitude) {
+        return LongLat.closeTo(longitude, latitude, candidate.stops.get(i)) ? 1 : 0;
+    }
+
+    /**
+     * @return the leg between the two stops flown from the given position: the last one if it started there, or
+     * as much of its headings as is still valid, with the rest of the way to the stop newly planned
+     */
+    private Leg leg(LongLat from, LongLat to, double longitude, double latitude) {
+        StopPair key = new StopPair(from, to);
+        Leg known = legs.get(key);
+        if (known != null && known.startLongitude == longitude && known.startLatitude == latitude) {
+            return known;
+        }
+        scratch.clear();
+        scratch.start(longitude, latitude);
+        if (known != null) {
+            replay(known.headings, to);
+        }
+        if (!LongLat.closeTo(scratch.lastLongitude(), scratch.lastLatitude(), to)) {
+            drone.legPlanner.planLeg(scratch, to);
+        }
+        int[] headings = new int[scratch.size() - 1];
+        for (int i = 0; i < headings.length; i++) {
+            headings[i] = scratch.heading(i + 1);
+        }
+        Leg leg = new Leg(longitude, latitude, headings, scratch.lastLongitude(), scratch.lastLatitude());
+        legs.put(key, leg);
+        return leg;
+    }
+
+    /**
+     * fly the headings in the scratch trace until the drone is close to the target, a move would cross a no fly
+     * zone or leave the confinement area, or the headings run out
+     */
+    private void replay(int[] headings, LongLat target) {
+        boolean confined = LongLat.isConfined(scratch.lastLongitude(), scratch.lastLatitude());
+        for (int heading : headings) {
+            double longitude = scratch.lastLongitude();
+            double latitude = scratch.lastLatitude();
+            if (LongLat.closeTo(longitude, latitude, target)) {
+                return;
+            }
+            double nextLongitude = LongLat.nextLongitude(longitude, heading);
+            double nextLatitude = LongLat.nextLatitude(latitude, heading);
+            if ((confined && !LongLat.isConfined(nextLongitude, nextLatitude))
+                    || drone.isNoFlyZone(longitude, latitude, nextLongitude, nextLatitude)) {
+                return;
+            }
+            scratch.move(nextLongitude, nextLatitude, heading);
+        }
+    }
+
+    /**
+     * replace the drone's orders, path and flight trace with the current plan, the new trace keeping the listener
+     * of the old one without telling it about the plan's points
+     */
+    private void publish() {
+        ArrayList<Order> orders = new ArrayList<>(scheduled);
+        orders.addAll(unscheduled);
+        drone.orders = orders;
+        drone.path = plan.stops;
+        drone.pickUpStops = plan.pickUps;
+        FlightTrace trace = new FlightTrace();
+        trace.start(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE);
+        for (int i = 1; i < plan.stops.size(); i++) {
+            if (hovers(plan, i) == 1) {
+                trace.hover(plan.pickUps.get(i) ? FlightTrace.PICKUP : FlightTrace.SHOP, i);
+            }
+            Leg leg = plan.legs.get(i);
+            for (int heading : leg.headings) {
+                trace.move(LongLat.nextLongitude(trace.lastLongitude(), heading),
+                        LongLat.nextLatitude(trace.lastLatitude(), heading), heading);
+            }
+        }
+        trace.setListener(drone.flightTrace.getListener());
+        drone.flightTrace = trace;
+    }
+}
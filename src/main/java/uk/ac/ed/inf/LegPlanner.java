@@ -0,0 +1,17 @@
+package uk.ac.ed.inf;
+
+/**
+ * LegPlanner plans a single leg of the flight, the moves the drone makes from one point of its path to the next.
+ * Drone.planPath uses whichever planner it's given, so different strategies can be compared on the same orders.
+ */
+public interface LegPlanner {
+
+    /**
+     * plan the moves from the last point of the trace until the drone is close to the target, avoiding the no fly
+     * zones, and record them in the trace
+     * @param trace - the flight so far, its last point is where the leg starts
+     * @param target - the point the drone has to get close to
+     * @return number of moves recorded, 0 if the drone was already close to the target
+     */
+    int planLeg(FlightTrace trace, LongLat target);
+}
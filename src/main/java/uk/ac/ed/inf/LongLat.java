@@ -6,10 +6,6 @@ package uk.ac.ed.inf;
  */
 public class LongLat {
 
-    public static final double FALSE_LONGITUDE = -3.183666;
-
-    public static final double FALSE_LATITUDE = 55.944066;
-
     /** The longitude for appleton tower, home to the drone  */
     public static final double APPLETON_LONGITUDE = -3.186874;
 
@@ -17,16 +13,16 @@ public class LongLat {
     public static final double APPLETON_LATITUDE = 55.944494;
 
     /** The west side longitude border for the drone confinement area  */
-    private static final double WESTMOST_LONGITUDE = -3.192473;
+    static final double WESTMOST_LONGITUDE = -3.192473;
 
     /** The east side longitude border for the drone confinement area  */
-    private static final double EASTMOST_LONGITUDE = -3.184319;
+    static final double EASTMOST_LONGITUDE = -3.184319;
 
     /** The north side latitude border for the drone confinement area  */
-    private static final double NORTHMOST_LATITUDE = 55.946233;
+    static final double NORTHMOST_LATITUDE = 55.946233;
 
     /** The south side latitude border for the drone confinement area  */
-    private static final double SOUTHMOST_LATITUDE = 55.942617;
+    static final double SOUTHMOST_LATITUDE = 55.942617;
 
     /** The standard distance in degrees that the drone makes for a single move */
     public static final double DISTANCE_TOLERANCE = 0.00015;
@@ -34,6 +30,20 @@ public class LongLat {
     /** The angle that's used to command the drone to hover */
     public static final int HOVERING_ANGLE = -999;
 
+    /** The longitude change of a single move in each of the 36 headings, indexed by angle / 10 */
+    private static final double[] MOVE_LONGITUDE = new double[36];
+
+    /** The latitude change of a single move in each of the 36 headings, indexed by angle / 10 */
+    private static final double[] MOVE_LATITUDE = new double[36];
+
+    static {
+        for (int heading = 0; heading < 36; heading++) {
+            double radian = Math.toRadians(heading * 10);
+            MOVE_LONGITUDE[heading] = DISTANCE_TOLERANCE * Math.cos(radian);
+            MOVE_LATITUDE[heading] = DISTANCE_TOLERANCE * Math.sin(radian);
+        }
+    }
+
     /** Longitude is the measurement east or west of the prime meridian.
      * it's used here in combination with latitude to represent a geographic location*/
     public double longitude;
@@ -54,18 +64,50 @@ public class LongLat {
         this.latitude = latitude;
     }
 
+    /**
+     * Determine whether the point is strictly inside the drone confinement area
+     * @return True if the point is inside the confinement area, False if it's on or outside the border
+     */
+    public boolean isConfined() {
+        return isConfined(longitude, latitude);
+    }
+
+    /**
+     * Determine whether the point given by its coordinates is strictly inside the drone confinement area
+     * @return True if the point is inside the confinement area, False if it's on or outside the border
+     */
+    public static boolean isConfined(double longitude, double latitude) {
+        return longitude > WESTMOST_LONGITUDE && longitude < EASTMOST_LONGITUDE
+                && latitude > SOUTHMOST_LATITUDE && latitude < NORTHMOST_LATITUDE;
+    }
+
     /**
      * Calculate the distance between two points
      * @param coordinate the position of the other point.
      * @return distance between two the points
      */
     public double distanceTo(LongLat coordinate) {
-        double longDiff = coordinate.longitude - longitude;
-        double latDiff = coordinate.latitude  - latitude;
-        //
+        return distance(longitude, latitude, coordinate.longitude, coordinate.latitude);
+    }
+
+    /**
+     * Calculate the distance between two points given by their coordinates
+     * @return distance between two the points
+     */
+    public static double distance(double longitude1, double latitude1, double longitude2, double latitude2) {
+        double longDiff = longitude2 - longitude1;
+        double latDiff = latitude2  - latitude1;
         return Math.sqrt(Math.pow(longDiff,2) + Math.pow(latDiff,2));
     }
 
+    /**
+     * Determine whether the point given by its coordinates is within the standard distance tolerance of coordinate
+     * @return True if the points are within the distance tolerance, False if not.
+     */
+    public static boolean closeTo(double longitude, double latitude, LongLat coordinate) {
+        return distance(longitude, latitude, coordinate.longitude, coordinate.latitude) < DISTANCE_TOLERANCE;
+    }
+
     /**
      * Determine whether the distance between two points is within the standard distance tolerance
      *
@@ -83,14 +125,7 @@ public class LongLat {
      * @throws IllegalArgumentException If the angle input is neither a valid movement angle nor a hovering angle.
      */
     public boolean parseAngle(int angle){
-        if ((angle >= 0) && (angle <= 350) && (angle%10 == 0)){
-            return true;
-        } else if(angle == HOVERING_ANGLE ) {
-            return false;
-        } else {
-            throw new IllegalArgumentException("The input angle should be a multiples of ten between 0 and 350 " +
-                    "or -999 for representing hovering");
-        }
+        return checkAngle(angle);
     }
 
     /**
@@ -99,15 +134,48 @@ public class LongLat {
      * @return the new position of the drone after making one move in the input angle.
      */
     public LongLat nextPosition(int angle){
-        if (parseAngle(angle)) {
-            double radian = Math.toRadians(angle);
-            // Calculate the distance moved in the longitude and latitude directions and
-            // add up with the original longitude and latitude.
-            double nextLongitude = longitude + (DISTANCE_TOLERANCE * Math.cos(radian));
-            double nextLatitude = latitude + (DISTANCE_TOLERANCE * Math.sin(radian));
-            return new LongLat(nextLongitude, nextLatitude);
+        return new LongLat(nextLongitude(longitude, angle), nextLatitude(latitude, angle));
+    }
+
+    /**
+     * Calculate the longitude after a move in the input angle, without creating a LongLat.
+     * @param longitude the longitude before the move.
+     * @param angle indicates the drone direction for the next move.
+     * @return the longitude after making one move in the input angle.
+     */
+    public static double nextLongitude(double longitude, int angle){
+        if (checkAngle(angle)) {
+            return longitude + MOVE_LONGITUDE[angle / 10];
+        }
+        return longitude;
+    }
+
+    /**
+     * Calculate the latitude after a move in the input angle, without creating a LongLat.
+     * @param latitude the latitude before the move.
+     * @param angle indicates the drone direction for the next move.
+     * @return the latitude after making one move in the input angle.
+     */
+    public static double nextLatitude(double latitude, int angle){
+        if (checkAngle(angle)) {
+            return latitude + MOVE_LATITUDE[angle / 10];
+        }
+        return latitude;
+    }
+
+    /**
+     * The static form of parseAngle
+     * @return Ture if the input angle indicates a valid drone movement direction, False if it represents drone-hovering.
+     * @throws IllegalArgumentException If the angle input is neither a valid movement angle nor a hovering angle.
+     */
+    private static boolean checkAngle(int angle){
+        if ((angle >= 0) && (angle <= 350) && (angle%10 == 0)){
+            return true;
+        } else if(angle == HOVERING_ANGLE ) {
+            return false;
         } else {
-            return new LongLat(longitude, latitude);
+            throw new IllegalArgumentException("The input angle should be a multiples of ten between 0 and 350 " +
+                    "or -999 for representing hovering");
         }
     }
 
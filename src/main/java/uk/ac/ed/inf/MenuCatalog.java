@@ -0,0 +1,105 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * MenuCatalog is an immutable index of the menus, built from a single parse of menus.json.
+ * It maps every item name to the three word location of the shop that sells it and its price,
+ * so order pricing and shop lookups only cost one hash lookup per item.
+ */
+public final class MenuCatalog {
+
+    /**
+     * The shop location and price of a single item on the menus
+     */
+    public static final class Entry {
+
+        /** three word location of the shop selling the item */
+        public final String shopLocation;
+
+        /** price for the item in pence */
+        public final int pence;
+
+        Entry(String shopLocation, int pence) {
+            this.shopLocation = shopLocation;
+            this.pence = pence;
+        }
+    }
+
+    /** item name to its shop location and price */
+    private final Map<String, Entry> items;
+
+    /** three word locations of all shops, in the order they appear on the menus */
+    private final Set<String> shopLocations;
+
+    /**
+     * constructor MenuCatalog
+     * @param menusList - the parsed menus, as returned by Menus.parseMenus()
+     */
+    public MenuCatalog(List<Menus.MenusJson> menusList) {
+        HashMap<String, Entry> itemMap = new HashMap<>();
+        LinkedHashSet<String> shops = new LinkedHashSet<>();
+        for (Menus.MenusJson store : menusList) {
+            shops.add(store.location);
+            for (Menus.MenusJson.Item specificItem : store.menu) {
+                // the first shop on the menus wins if two shops sell an item with the same name
+                itemMap.putIfAbsent(specificItem.item, new Entry(store.location, specificItem.pence));
+            }
+        }
+        this.items = Collections.unmodifiableMap(itemMap);
+        this.shopLocations = Collections.unmodifiableSet(shops);
+    }
+
+    /**
+     * @param item - name of an item on the menus
+     * @return the shop location and price of the item, or null if no shop sells it
+     */
+    public Entry lookup(String item) {
+        return items.get(item);
+    }
+
+    /**
+     * Calculates the sum of the item prices, items that are not on the menus cost nothing
+     * @param itemNames - names of the items
+     * @return total price of the items in pence
+     */
+    public int itemsCost(List<String> itemNames) {
+        int cost = 0;
+        for (String item : itemNames) {
+            Entry entry = items.get(item);
+            if (entry != null) {
+                cost += entry.pence;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Find the shops that have to be visited to collect the given items
+     * @param itemNames - names of the items
+     * @return ArrayList<String> distinct three word shop locations, in the order of the items
+     */
+    public ArrayList<String> shopLocationsFor(List<String> itemNames) {
+        ArrayList<String> locations = new ArrayList<>();
+        for (String item : itemNames) {
+            Entry entry = items.get(item);
+            if (entry != null && !locations.contains(entry.shopLocation)) {
+                locations.add(entry.shopLocation);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * @return three word locations of every shop on the menus
+     */
+    public Set<String> getShopLocations() {
+        return shopLocations;
+    }
+}
@@ -7,6 +7,7 @@ import java.lang.reflect.Type;
 import java.net.http.HttpResponse;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Menus calls webServer to send Http requests and gets a Http response of JSON format which it parses
@@ -17,19 +18,38 @@ public class Menus {
     /** The port where the web server is running.*/
     public final String port;
 
+    /** The web server the menus are read from */
+    private final WebServer server;
+
     /** This stores the body of the JSON Http response*/
     private String jsonListString;
 
     /** The standard delivery fees per order, unit: pence.*/
     private static final int BASIC_DELIVERY_COST = 50;
 
+    /** The menus indexed by item, built from a single parse and kept until reloadCatalog() is called*/
+    private volatile MenuCatalog catalog;
+
+    /** the catalogue being loaded by getCatalogAsync(), null if none is */
+    private CompletableFuture<MenuCatalog> loading;
+
     /**
      * Constructor Menus
      *
      * @param port The port where the web server is running.
      */
     public Menus(String port){
-        this.port = port;
+        this(new WebServer(port));
+    }
+
+    /**
+     * Constructor Menus, reading the menus from the given web server or its snapshot
+     *
+     * @param server The web server the menus are read from
+     */
+    public Menus(WebServer server){
+        this.port = server.port;
+        this.server = server;
     }
 
     /**
@@ -60,34 +80,71 @@ public class Menus {
      * @return ArrayList<MenusJson> menusJsonList
      */
     public ArrayList<MenusJson> parseMenus(){
-        WebServer webServer = new WebServer(port);
-        ArrayList<MenusJson> menusJsonList;
+        if(server.snapshot != null){
+            return server.snapshot.menus();
+        }
         try{
-            HttpResponse<String> response = webServer.createResponse(webServer.getURLStringForMenus());
-            // A statusCode of 200 means the url string is syntactically and semantically correct,
-            // so we can then use response.body()
-            if(response.statusCode() == 200){
-                jsonListString = response.body();
-
-                // A statusCode of 404 means the url string may be syntactically but is semantically incorrect,
-                // we will need to double-check that url
-            }else if(response.statusCode() == 404) {
-                System.err.println("URL Not Found: Unable to connect to localhost at port " + port + "." +
-                        "\nStatus Code: 404");
-                System.exit(1);
-            }else {
-                System.err.println("Fatal error: Unable to connect to localhost at port " + port + ".");
-                System.exit(1);
-            }
+            HttpResponse<String> response = server.createResponse(server.getURLStringForMenus());
+            jsonListString = server.bodyOf(response);
         }catch (Exception e){
             e.printStackTrace();
             System.exit(1);
         }
+        return parseMenus(jsonListString);
+    }
 
-        // Deserializing a JSON list to a Java object using its type
+    /**
+     * Deserializing JSON list to a Java object using its type.
+     * @return ArrayList<MenusJson> menusJsonList
+     */
+    private static ArrayList<MenusJson> parseMenus(String json){
         Type listType = new TypeToken<ArrayList<MenusJson>>(){}.getType();
-        menusJsonList = new Gson().fromJson(this.jsonListString, listType);
-        return menusJsonList;
+        return new Gson().fromJson(json, listType);
+    }
+
+    /**
+     * Get the menus catalogue, parsing the menus from the server the first time it's needed
+     * @return MenuCatalog catalog of the current menus
+     */
+    public MenuCatalog getCatalog(){
+        MenuCatalog current = catalog;
+        if(current == null){
+            current = getCatalogAsync().join();
+        }
+        return current;
+    }
+
+    /**
+     * Get the menus catalogue without waiting for it, sending the request for the menus the first time it's needed.
+     * getCatalog() waits for the same request instead of sending another one.
+     * @return CompletableFuture<MenuCatalog> completed with the catalog of the current menus
+     */
+    public synchronized CompletableFuture<MenuCatalog> getCatalogAsync(){
+        if(catalog != null){
+            return CompletableFuture.completedFuture(catalog);
+        }
+        if(server.snapshot != null){
+            catalog = new MenuCatalog(server.snapshot.menus());
+            return CompletableFuture.completedFuture(catalog);
+        }
+        if(loading == null){
+            loading = server.createResponseAsync(server.getURLStringForMenus()).thenApply(response -> {
+                MenuCatalog current = new MenuCatalog(parseMenus(server.bodyOf(response)));
+                catalog = current;
+                return current;
+            });
+        }
+        return loading;
+    }
+
+    /**
+     * Parse the menus from the server again and replace the catalogue, for when the menus change
+     * @return MenuCatalog catalog of the new menus
+     */
+    public MenuCatalog reloadCatalog(){
+        MenuCatalog current = new MenuCatalog(parseMenus());
+        catalog = current;
+        return current;
     }
 
     /**
@@ -101,24 +158,12 @@ public class Menus {
 
         // The initial cost is equal to the basic delivery fees of 50p
         int cost = BASIC_DELIVERY_COST;
-        ArrayList<Menus.MenusJson> menusList = menus.parseMenus();
         try {
-            //looping around items of each store in the Menus JSON
-            for (Menus.MenusJson store : menusList) {
-                for (String string : strings) {
-                    for (Menus.MenusJson.Item specificItem : store.menu) {
-
-                        if (specificItem.item.equals(string)) {
-                            cost += specificItem.pence;
-                        }
-                    }
-                }
-            }
-
+            cost += menus.getCatalog().itemsCost(strings);
         } catch (NullPointerException e) {
             System.err.println("ERROR: " + e.getMessage());
             System.exit(1);
         }
         return cost;
     }
-}
\ No newline at end of file
+}
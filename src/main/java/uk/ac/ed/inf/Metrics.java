@@ -0,0 +1,240 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics counts what a run does and times its phases, so it's visible where the time goes. The counters and timers
+ * are LongAdders, which threads update without contending, so the drones of a fleet or a batch can all record into
+ * them and the cost on the hot paths is a single add. At the end of a run they are exported both as a JSON summary
+ * and in the Prometheus text format.
+ */
+public final class Metrics {
+
+    /** The JSON summary written at the end of a run */
+    public static final String JSON_FILE = "metrics.json";
+
+    /** The Prometheus text format file written at the end of a run */
+    public static final String PROMETHEUS_FILE = "metrics.prom";
+
+    /** The prefix of every Prometheus metric name */
+    private static final String PREFIX = "drone_";
+
+    /**
+     * The things that are counted
+     */
+    public enum Counter {
+        HTTP_REQUESTS("http_requests", "requests sent to the web server"),
+        NO_FLY_ZONE_CHECKS("no_fly_zone_checks", "line segments checked against the no fly zones by isNoFlyZone"),
+        SEGMENT_TESTS("segment_tests", "intersection tests between a line segment and a no fly zone edge"),
+        ANGLE_ROTATIONS("angle_rotations", "10 degree rotations made by getAngle to find a legal move"),
+        JDBC_STATEMENTS("jdbc_statements", "statements and batches executed on the database"),
+        MOVES("moves", "moves flown by the drones, hovers excluded");
+
+        /** name of the metric, without the prefix */
+        final String metricName;
+
+        /** description of the metric */
+        final String help;
+
+        /** the count */
+        final LongAdder count = new LongAdder();
+
+        Counter(String metricName, String help) {
+            this.metricName = metricName;
+            this.help = help;
+        }
+    }
+
+    /**
+     * The phases that are timed
+     */
+    public enum Phase {
+        FIND_ORDER_SHOP_LOCATIONS("find_order_shop_locations"),
+        GET_VISITING_LONG_LAT("get_visiting_long_lat"),
+        SORT_ORDERS("sort_orders"),
+        AVOID_NO_FLY_ZONE("avoid_no_fly_zone"),
+        PLAN_PATH("plan_path"),
+        DELIVERIES_INSERTION("deliveries_insertion"),
+        FLIGHTPATH_INSERTION("flightpath_insertion"),
+        GEOJSON_OUTPUT("geojson_output"),
+        EXPORT_TO_SERVER("export_to_server");
+
+        /** name of the phase in the exports */
+        final String phaseName;
+
+        /** number of times the phase ran */
+        final LongAdder count = new LongAdder();
+
+        /** total time spent in the phase, in nanoseconds */
+        final LongAdder nanos = new LongAdder();
+
+        /** longest single run of the phase, in nanoseconds */
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        Phase(String phaseName) {
+            this.phaseName = phaseName;
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * add one to the counter
+     */
+    public static void increment(Counter counter) {
+        counter.count.increment();
+    }
+
+    /**
+     * add the given amount to the counter
+     */
+    public static void add(Counter counter, long amount) {
+        counter.count.add(amount);
+    }
+
+    /**
+     * @return current value of the counter
+     */
+    public static long get(Counter counter) {
+        return counter.count.sum();
+    }
+
+    /**
+     * @return the time to pass to stop() when the phase ends
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * record one run of the phase
+     * @param start - the time returned by start() when the phase began
+     */
+    public static void stop(Phase phase, long start) {
+        record(phase, System.nanoTime() - start);
+    }
+
+    /**
+     * record one run of the phase that took the given time
+     * @param elapsed - time the run took, in nanoseconds
+     */
+    public static void record(Phase phase, long elapsed) {
+        phase.count.increment();
+        phase.nanos.add(elapsed);
+        phase.maxNanos.accumulate(elapsed);
+    }
+
+    /**
+     * @return number of times the phase ran
+     */
+    public static long runs(Phase phase) {
+        return phase.count.sum();
+    }
+
+    /**
+     * @return total time spent in the phase, in nanoseconds
+     */
+    public static long totalNanos(Phase phase) {
+        return phase.nanos.sum();
+    }
+
+    /**
+     * @return longest single run of the phase, in nanoseconds
+     */
+    public static long maxNanos(Phase phase) {
+        return phase.maxNanos.get();
+    }
+
+    /**
+     * set every counter and timer back to zero
+     */
+    public static void reset() {
+        for (Counter counter : Counter.values()) {
+            counter.count.reset();
+        }
+        for (Phase phase : Phase.values()) {
+            phase.count.reset();
+            phase.nanos.reset();
+            phase.maxNanos.reset();
+        }
+    }
+
+    /**
+     * @return the counters and timers as a JSON object, times in milliseconds
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\"counters\":{");
+        Counter[] counters = Counter.values();
+        for (int i = 0; i < counters.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(counters[i].metricName).append("\":").append(counters[i].count.sum());
+        }
+        json.append("},\"phases\":{");
+        Phase[] phases = Phase.values();
+        for (int i = 0; i < phases.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(phases[i].phaseName).append("\":{\"count\":").append(phases[i].count.sum())
+                    .append(",\"totalMillis\":").append(phases[i].nanos.sum() / 1e6)
+                    .append(",\"maxMillis\":").append(phases[i].maxNanos.get() / 1e6).append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * @return the counters and timers in the Prometheus text format, times in seconds
+     */
+    public static String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        for (Counter counter : Counter.values()) {
+            String name = PREFIX + counter.metricName + "_total";
+            text.append("# HELP ").append(name).append(' ').append(counter.help).append('\n');
+            text.append("# TYPE ").append(name).append(" counter\n");
+            text.append(name).append(' ').append(counter.count.sum()).append('\n');
+        }
+        String count = PREFIX + "phase_runs_total";
+        String seconds = PREFIX + "phase_seconds_total";
+        String max = PREFIX + "phase_max_seconds";
+        text.append("# HELP ").append(count).append(" number of times the phase ran\n");
+        text.append("# TYPE ").append(count).append(" counter\n");
+        for (Phase phase : Phase.values()) {
+            text.append(count).append("{phase=\"").append(phase.phaseName).append("\"} ")
+                    .append(phase.count.sum()).append('\n');
+        }
+        text.append("# HELP ").append(seconds).append(" total time spent in the phase\n");
+        text.append("# TYPE ").append(seconds).append(" counter\n");
+        for (Phase phase : Phase.values()) {
+            text.append(seconds).append("{phase=\"").append(phase.phaseName).append("\"} ")
+                    .append(phase.nanos.sum() / 1e9).append('\n');
+        }
+        text.append("# HELP ").append(max).append(" longest single run of the phase\n");
+        text.append("# TYPE ").append(max).append(" gauge\n");
+        for (Phase phase : Phase.values()) {
+            text.append(max).append("{phase=\"").append(phase.phaseName).append("\"} ")
+                    .append(phase.maxNanos.get() / 1e9).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * write metrics.json and metrics.prom to the given directory, replacing any from an earlier run
+     * @param directory - the directory the files are written to
+     */
+    public static void export(Path directory) {
+        try {
+            Files.write(directory.resolve(JSON_FILE), toJson().getBytes(StandardCharsets.UTF_8));
+            Files.write(directory.resolve(PROMETHEUS_FILE), toPrometheus().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
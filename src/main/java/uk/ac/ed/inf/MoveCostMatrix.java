@@ -0,0 +1,292 @@
+package uk.ac.ed.inf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * MoveCostMatrix holds the exact number of moves between every two stops of the day, shops, pick up points,
+ * landmarks and Appleton Tower, found with the A* planner so the detours around the no fly zones are counted.
+ * The pairs are planned in parallel by prepare() and looked up in constant time afterwards, a pair that was never
+ * prepared falls back to the straight line estimate. prepare() only plans the pairs that aren't known yet, so adding
+ * a stop plans its pairs with the known stops and nothing else. The move counts are kept in a binary file named after
+ * a hash of the no fly zones and landmarks, written by save() at the end of the run, so they're only planned again
+ * when those change, and the matrix is safe to share between threads.
+ */
+public class MoveCostMatrix implements MoveCosts {
+
+    /** The prefix of the cache files, followed by the hash of the no fly zones and landmarks */
+    public static final String CACHE_FILE_PREFIX = "move-costs-";
+
+    /** The first int of every cache file */
+    private static final int MAGIC = 0x4d4f5645;
+
+    /** The version of the cache file layout */
+    private static final int VERSION = 1;
+
+    /**
+     * A pair of points, compared by their coordinates
+     */
+    private static final class Pair {
+        final double fromLongitude;
+        final double fromLatitude;
+        final double toLongitude;
+        final double toLatitude;
+
+        Pair(double fromLongitude, double fromLatitude, double toLongitude, double toLatitude) {
+            this.fromLongitude = fromLongitude;
+            this.fromLatitude = fromLatitude;
+            this.toLongitude = toLongitude;
+            this.toLatitude = toLatitude;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Pair)) {
+                return false;
+            }
+            Pair p = (Pair) o;
+            return fromLongitude == p.fromLongitude && fromLatitude == p.fromLatitude
+                    && toLongitude == p.toLongitude && toLatitude == p.toLatitude;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = Double.doubleToLongBits(fromLongitude);
+            h = 31 * h + Double.doubleToLongBits(fromLatitude);
+            h = 31 * h + Double.doubleToLongBits(toLongitude);
+            h = 31 * h + Double.doubleToLongBits(toLatitude);
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /** the no fly zones the moves avoid */
+    private final NoFlyZoneIndex noFlyZones;
+
+    /** the file the move counts are kept in */
+    private final Path cacheFile;
+
+    /** hash of the no fly zones and landmarks the move counts are valid for */
+    private final byte[] dataHash;
+
+    /** moves between every prepared pair of points */
+    private final ConcurrentHashMap<Pair, Integer> moves = new ConcurrentHashMap<>();
+
+    /** number of worker threads prepare() plans the pairs on */
+    private final int threads;
+
+    /** true if pairs were planned since the cache file was last saved */
+    private volatile boolean dirty = false;
+
+    /**
+     * constructor MoveCostMatrix, reading the cache file for these no fly zones and landmarks from the working
+     * directory if there is one
+     * @param noFlyZones - the no fly zones the moves avoid
+     * @param landmarks - the landmarks, part of the cache key
+     */
+    public MoveCostMatrix(NoFlyZoneIndex noFlyZones, List<LongLat> landmarks) {
+        this(noFlyZones, landmarks, Paths.get("."), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * constructor MoveCostMatrix
+     * @param noFlyZones - the no fly zones the moves avoid
+     * @param landmarks - the landmarks, part of the cache key
+     * @param cacheDirectory - the directory the cache file is kept in
+     * @param threads - number of worker threads prepare() plans the pairs on
+     */
+    public MoveCostMatrix(NoFlyZoneIndex noFlyZones, List<LongLat> landmarks, Path cacheDirectory, int threads) {
+        this.noFlyZones = noFlyZones;
+        this.threads = Math.max(1, threads);
+        this.dataHash = hash(noFlyZones, landmarks);
+        StringBuilder name = new StringBuilder(CACHE_FILE_PREFIX);
+        for (int i = 0; i < 8; i++) {
+            name.append(String.format("%02x", dataHash[i]));
+        }
+        this.cacheFile = cacheDirectory.resolve(name + ".bin");
+        load();
+    }
+
+    /**
+     * @return SHA-256 of the no fly zone edges, the landmarks and the move length
+     */
+    private static byte[] hash(NoFlyZoneIndex noFlyZones, List<LongLat> landmarks) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(Double.BYTES * 4);
+            for (int e = 0; e < noFlyZones.size(); e++) {
+                buffer.clear();
+                buffer.putDouble(noFlyZones.x1[e]).putDouble(noFlyZones.y1[e])
+                        .putDouble(noFlyZones.x2[e]).putDouble(noFlyZones.y2[e]);
+                digest.update(buffer.array());
+            }
+            for (LongLat landmark : landmarks) {
+                buffer.clear();
+                buffer.putDouble(landmark.longitude).putDouble(landmark.latitude).putDouble(0).putDouble(0);
+                digest.update(buffer.array());
+            }
+            buffer.clear();
+            buffer.putDouble(LongLat.DISTANCE_TOLERANCE).putDouble(0).putDouble(0).putDouble(0);
+            digest.update(buffer.array());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int moves(LongLat from, LongLat to) {
+        Integer known = moves.get(new Pair(from.longitude, from.latitude, to.longitude, to.latitude));
+        return known != null ? known : STRAIGHT_LINE.moves(from, to);
+    }
+
+    /**
+     * @return number of pairs of points whose moves are known
+     */
+    public int size() {
+        return moves.size();
+    }
+
+    /**
+     * plan every pair of the given points that isn't known yet, in parallel. Nothing is locked while they're
+     * planned, so days and drones sharing the matrix prepare at the same time, and two of them asking for the same
+     * new pair at once may both plan it, to the same count. Call save() to keep the new pairs for the next run.
+     */
+    @Override
+    public void prepare(Collection<LongLat> points) {
+        ArrayList<LongLat> distinct = new ArrayList<>();
+        HashSet<Pair> seen = new HashSet<>();
+        for (LongLat point : points) {
+            if (seen.add(new Pair(point.longitude, point.latitude, point.longitude, point.latitude))) {
+                distinct.add(point);
+            }
+        }
+        // the missing destinations of every point, only the pairs with new points once the others are known
+        LinkedHashMap<LongLat, ArrayList<LongLat>> missing = new LinkedHashMap<>();
+        for (LongLat from : distinct) {
+            for (LongLat to : distinct) {
+                if (!moves.containsKey(new Pair(from.longitude, from.latitude, to.longitude, to.latitude))) {
+                    missing.computeIfAbsent(from, f -> new ArrayList<>()).add(to);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(threads, missing.size()));
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (Map.Entry<LongLat, ArrayList<LongLat>> entry : missing.entrySet()) {
+                futures.add(workers.submit(() -> planFrom(entry.getKey(), entry.getValue())));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            workers.shutdown();
+        }
+        dirty = true;
+    }
+
+    /**
+     * plan the moves from one point to each of the given points, with a planner of its own
+     */
+    private void planFrom(LongLat from, List<LongLat> points) {
+        AStarLegPlanner planner = new AStarLegPlanner(noFlyZones, null);
+        FlightTrace trace = new FlightTrace();
+        for (LongLat to : points) {
+            Pair pair = new Pair(from.longitude, from.latitude, to.longitude, to.latitude);
+            trace.clear();
+            trace.start(from.longitude, from.latitude);
+            int planned = planner.planLeg(trace, to);
+            boolean reached = LongLat.closeTo(trace.lastLongitude(), trace.lastLatitude(), to);
+            moves.put(pair, reached ? planned : STRAIGHT_LINE.moves(from, to));
+        }
+    }
+
+    /**
+     * read the cache file, a missing file or one for other no fly zones and landmarks leaves the matrix empty
+     */
+    private void load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            byte[] fileHash = new byte[dataHash.length];
+            in.readFully(fileHash);
+            if (!MessageDigest.isEqual(fileHash, dataHash)) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Pair pair = new Pair(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+                moves.put(pair, in.readInt());
+            }
+        } catch (NoSuchFileException e) {
+            // first run with these no fly zones and landmarks
+        } catch (IOException e) {
+            e.printStackTrace();
+            moves.clear();
+        }
+    }
+
+    /**
+     * write the cache file if pairs were planned since it was last saved, replacing the old one in one move
+     */
+    @Override
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(dataHash);
+            ArrayList<Map.Entry<Pair, Integer>> entries = new ArrayList<>(moves.entrySet());
+            out.writeInt(entries.size());
+            for (Map.Entry<Pair, Integer> entry : entries) {
+                Pair pair = entry.getKey();
+                out.writeDouble(pair.fromLongitude);
+                out.writeDouble(pair.fromLatitude);
+                out.writeDouble(pair.toLongitude);
+                out.writeDouble(pair.toLatitude);
+                out.writeInt(entry.getValue());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
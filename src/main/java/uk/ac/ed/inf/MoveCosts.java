@@ -0,0 +1,34 @@
+package uk.ac.ed.inf;
+
+import java.util.Collection;
+
+/**
+ * MoveCosts estimates how many moves the drone needs to fly from one point to get close to another.
+ * Route decisions such as the order sequencing are made with whichever estimate they're given.
+ */
+public interface MoveCosts {
+
+    /** the straight line estimate, the fewest moves possible if there were no no fly zones */
+    MoveCosts STRAIGHT_LINE = (from, to) -> AStarLegPlanner.movesHeuristic(from.longitude, from.latitude, to);
+
+    /**
+     * @param from - the point the drone starts at
+     * @param to - the point the drone has to get close to
+     * @return number of moves needed
+     */
+    int moves(LongLat from, LongLat to);
+
+    /**
+     * called with the points of a day before its route decisions are made, so estimates that are expensive to find
+     * can be found for all of them at once. The straight line estimate needs nothing.
+     * @param points - the stops, landmarks and Appleton Tower the moves will be asked between
+     */
+    default void prepare(Collection<LongLat> points) {
+    }
+
+    /**
+     * called once at the end of the run, so estimates that were found can be kept for the next run
+     */
+    default void save() {
+    }
+}
@@ -0,0 +1,280 @@
+package uk.ac.ed.inf;
+
+import java.awt.geom.Line2D;
+import java.util.List;
+
+/**
+ * NoFlyZoneIndex holds the edges of every no fly zone polygon in a uniform grid, so a collision check only has to
+ * test the edges in the grid cells that the drone's line segment touches. The edges are loaded once per run and
+ * stored as packed coordinate arrays, and every polygon keeps its bounding box for a quick early exit.
+ * The index is read-only once built, so it can be shared between drones and threads.
+ */
+public class NoFlyZoneIndex {
+
+    /** The number of grid cells along the longer side of the area covered by the no fly zones */
+    private static final int GRID_RESOLUTION = 64;
+
+    /** start longitude of every edge */
+    final double[] x1;
+
+    /** start latitude of every edge */
+    final double[] y1;
+
+    /** end longitude of every edge */
+    final double[] x2;
+
+    /** end latitude of every edge */
+    final double[] y2;
+
+    /** the polygon each edge belongs to */
+    final int[] edgePolygon;
+
+    /** bounding box of every polygon, as west, south, east, north */
+    final double[] polygonMinX;
+    final double[] polygonMinY;
+    final double[] polygonMaxX;
+    final double[] polygonMaxY;
+
+    /** bounding box of the whole grid */
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
+
+    /** size of a single grid cell in degrees */
+    private double cellWidth;
+    private double cellHeight;
+
+    /** number of grid cells in each direction */
+    private int columns;
+    private int rows;
+
+    /** cellStart[c] to cellStart[c+1] is the range of cellEdges that belongs to cell c */
+    private int[] cellStart;
+
+    /** edge indices of every cell, laid out one cell after another */
+    private int[] cellEdges;
+
+    /**
+     * constructor NoFlyZoneIndex
+     * @param polygons - the edges of each no fly zone polygon, as returned by WebServer.getNoFlyZonePolygons()
+     */
+    public NoFlyZoneIndex(List<? extends List<Line2D>> polygons) {
+        int edgeCount = 0;
+        for (List<Line2D> polygon : polygons) {
+            edgeCount += polygon.size();
+        }
+        x1 = new double[edgeCount];
+        y1 = new double[edgeCount];
+        x2 = new double[edgeCount];
+        y2 = new double[edgeCount];
+        edgePolygon = new int[edgeCount];
+        polygonMinX = new double[polygons.size()];
+        polygonMinY = new double[polygons.size()];
+        polygonMaxX = new double[polygons.size()];
+        polygonMaxY = new double[polygons.size()];
+
+        int e = 0;
+        for (int p = 0; p < polygons.size(); p++) {
+            polygonMinX[p] = Double.POSITIVE_INFINITY;
+            polygonMinY[p] = Double.POSITIVE_INFINITY;
+            polygonMaxX[p] = Double.NEGATIVE_INFINITY;
+            polygonMaxY[p] = Double.NEGATIVE_INFINITY;
+            for (Line2D line : polygons.get(p)) {
+                x1[e] = line.getX1();
+                y1[e] = line.getY1();
+                x2[e] = line.getX2();
+                y2[e] = line.getY2();
+                edgePolygon[e] = p;
+                polygonMinX[p] = Math.min(polygonMinX[p], Math.min(x1[e], x2[e]));
+                polygonMinY[p] = Math.min(polygonMinY[p], Math.min(y1[e], y2[e]));
+                polygonMaxX[p] = Math.max(polygonMaxX[p], Math.max(x1[e], x2[e]));
+                polygonMaxY[p] = Math.max(polygonMaxY[p], Math.max(y1[e], y2[e]));
+                e++;
+            }
+        }
+        buildGrid();
+    }
+
+    /**
+     * Loads the no fly zones from the web server once and indexes them.
+     * @param server - WebServer we get the no fly zones from
+     * @return the index of the server's no fly zones
+     */
+    public static NoFlyZoneIndex fromServer(WebServer server) {
+        return new NoFlyZoneIndex(server.getNoFlyZonePolygons());
+    }
+
+    /**
+     * bucket every edge into all grid cells its bounding box overlaps
+     */
+    private void buildGrid() {
+        if (x1.length == 0) {
+            return;
+        }
+        minX = Double.POSITIVE_INFINITY;
+        minY = Double.POSITIVE_INFINITY;
+        maxX = Double.NEGATIVE_INFINITY;
+        maxY = Double.NEGATIVE_INFINITY;
+        for (int p = 0; p < polygonMinX.length; p++) {
+            minX = Math.min(minX, polygonMinX[p]);
+            minY = Math.min(minY, polygonMinY[p]);
+            maxX = Math.max(maxX, polygonMaxX[p]);
+            maxY = Math.max(maxY, polygonMaxY[p]);
+        }
+        double cellSize = Math.max(maxX - minX, maxY - minY) / GRID_RESOLUTION;
+        if (cellSize == 0) {
+            cellSize = LongLat.DISTANCE_TOLERANCE;
+        }
+        columns = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+        rows = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize));
+        cellWidth = cellSize;
+        cellHeight = cellSize;
+
+        // count the edges of every cell first, then fill them in, so the cells can share one flat array
+        int[] counts = new int[columns * rows + 1];
+        for (int e = 0; e < x1.length; e++) {
+            int c0 = column(Math.min(x1[e], x2[e]));
+            int c1 = column(Math.max(x1[e], x2[e]));
+            int r0 = row(Math.min(y1[e], y2[e]));
+            int r1 = row(Math.max(y1[e], y2[e]));
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    counts[r * columns + c]++;
+                }
+            }
+        }
+        cellStart = new int[columns * rows + 1];
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] = cellStart[c] + counts[c];
+        }
+        cellEdges = new int[cellStart[columns * rows]];
+        int[] fill = new int[columns * rows];
+        for (int e = 0; e < x1.length; e++) {
+            int c0 = column(Math.min(x1[e], x2[e]));
+            int c1 = column(Math.max(x1[e], x2[e]));
+            int r0 = row(Math.min(y1[e], y2[e]));
+            int r1 = row(Math.max(y1[e], y2[e]));
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    int cell = r * columns + c;
+                    cellEdges[cellStart[cell] + fill[cell]++] = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the grid column of the given longitude, clamped to the grid
+     */
+    private int column(double longitude) {
+        int c = (int) ((longitude - minX) / cellWidth);
+        return Math.max(0, Math.min(columns - 1, c));
+    }
+
+    /**
+     * @return the grid row of the given latitude, clamped to the grid
+     */
+    private int row(double latitude) {
+        int r = (int) ((latitude - minY) / cellHeight);
+        return Math.max(0, Math.min(rows - 1, r));
+    }
+
+    /**
+     * @return number of polygon edges held by the index
+     */
+    public int size() {
+        return x1.length;
+    }
+
+    /**
+     * check whether the line segment between the given two coordinates crosses any no fly zone edge
+     * @return true if crossed, false if not
+     */
+    public boolean intersects(double lng1, double lat1, double lng2, double lat2) {
+        if (x1.length == 0) {
+            return false;
+        }
+        double segMinX = Math.min(lng1, lng2);
+        double segMaxX = Math.max(lng1, lng2);
+        double segMinY = Math.min(lat1, lat2);
+        double segMaxY = Math.max(lat1, lat2);
+        if (segMaxX < minX || segMinX > maxX || segMaxY < minY || segMinY > maxY) {
+            return false;
+        }
+        // early exit if the segment is nowhere near any polygon
+        boolean nearPolygon = false;
+        for (int p = 0; p < polygonMinX.length; p++) {
+            if (overlapsPolygon(p, segMinX, segMinY, segMaxX, segMaxY)) {
+                nearPolygon = true;
+                break;
+            }
+        }
+        if (!nearPolygon) {
+            return false;
+        }
+        int c0 = column(segMinX);
+        int c1 = column(segMaxX);
+        int r0 = row(segMinY);
+        int r1 = row(segMaxY);
+        int tests = 0;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int e = cellEdges[k];
+                    if (!overlapsPolygon(edgePolygon[e], segMinX, segMinY, segMaxX, segMaxY)) {
+                        continue;
+                    }
+                    tests++;
+                    if (Line2D.linesIntersect(x1[e], y1[e], x2[e], y2[e], lng1, lat1, lng2, lat2)) {
+                        Metrics.add(Metrics.Counter.SEGMENT_TESTS, tests);
+                        return true;
+                    }
+                }
+            }
+        }
+        Metrics.add(Metrics.Counter.SEGMENT_TESTS, tests);
+        return false;
+    }
+
+    /**
+     * collect the edges in the grid cells the given bounding box touches whose polygon it overlaps, every edge once
+     * @param seen - scratch marks, one per edge, an edge is skipped if its mark is already stamp
+     * @param stamp - mark of this call, different from the marks of earlier calls with the same seen array
+     * @param out - receives the indices of the edges, one per edge at most
+     * @return number of edges collected
+     */
+    int edgesNear(double boxMinX, double boxMinY, double boxMaxX, double boxMaxY, int[] seen, int stamp, int[] out) {
+        if (x1.length == 0 || boxMaxX < minX || boxMinX > maxX || boxMaxY < minY || boxMinY > maxY) {
+            return 0;
+        }
+        int count = 0;
+        int c0 = column(boxMinX);
+        int c1 = column(boxMaxX);
+        int r0 = row(boxMinY);
+        int r1 = row(boxMaxY);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int e = cellEdges[k];
+                    if (seen[e] == stamp || !overlapsPolygon(edgePolygon[e], boxMinX, boxMinY, boxMaxX, boxMaxY)) {
+                        continue;
+                    }
+                    seen[e] = stamp;
+                    out[count++] = e;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true if the given bounding box overlaps the bounding box of polygon p
+     */
+    private boolean overlapsPolygon(int p, double segMinX, double segMinY, double segMaxX, double segMaxY) {
+        return segMaxX >= polygonMinX[p] && segMinX <= polygonMaxX[p]
+                && segMaxY >= polygonMinY[p] && segMinY <= polygonMaxY[p];
+    }
+}
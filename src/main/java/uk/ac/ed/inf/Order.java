@@ -43,9 +43,6 @@ public class Order implements Comparable<Order> {
     /** is this order delivered  */
     boolean isDelivered = false;
 
-    /** is this order delivered, another marker for  flightpathinsertion()*/
-    boolean isOrderDone = false;
-
     /**
      * Constructor Order
      * @param orderNo order number
@@ -0,0 +1,265 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * OrderSequencer chooses the order in which the drone delivers the orders, so that the revenue of the orders it
+ * manages to deliver within its move budget is as high as possible. The drone delivers the orders one after another
+ * and heads home once the next order would no longer leave enough moves to get back, so only a prefix of the
+ * sequence is delivered. The search improves the sequence with 2-opt and Or-opt moves, both as a local search run
+ * until no move improves it and as the neighbourhood of a simulated annealing of a fixed number of steps, so the same
+ * orders always give the same sequence. The wall clock only caps the search, for days so large that it would take
+ * longer than the time budget, and only then can a run differ from another.
+ * All move costs between the stops are computed once before the search starts.
+ */
+public class OrderSequencer {
+
+    /** The longest run of consecutive orders moved by a single Or-opt move */
+    private static final int MAX_OR_OPT_LENGTH = 3;
+
+    /** The final temperature of the annealing, in pence */
+    private static final double FINAL_TEMPERATURE = 0.1;
+
+    /** The number of annealing steps per order */
+    private static final int ANNEALING_STEPS_PER_ORDER = 2000;
+
+    /** The number of annealing steps between two looks at the clock */
+    private static final int STEPS_PER_CLOCK_CHECK = 64;
+
+    /** estimates the moves between two stops */
+    private final MoveCosts moveCosts;
+
+    /** The maximum number of moves the drone can make */
+    private final int moveBudget;
+
+    /** the longest the search may run, in milliseconds, a cap it normally stops well before */
+    private final long timeBudgetMillis;
+
+    /** random source of the annealing, seeded so a run can be repeated */
+    private final Random random = new Random(42);
+
+    /** price of every order */
+    private int[] price;
+
+    /** moves to fly from home to the first shop of every order */
+    private int[] fromHome;
+
+    /** moves to fly from the pick up point of every order back home */
+    private int[] toHome;
+
+    /** moves to fly from the first shop of an order to its pick up point, hovering at every stop */
+    private int[] within;
+
+    /** between[i][j] is the moves to fly from the pick up point of order i to the first shop of order j */
+    private int[][] between;
+
+    /**
+     * constructor OrderSequencer
+     * @param moveCosts - estimates the moves between two stops
+     * @param moveBudget - the maximum number of moves the drone can make
+     * @param timeBudgetMillis - the longest the search may run, in milliseconds, 0 keeps the given order
+     */
+    public OrderSequencer(MoveCosts moveCosts, int moveBudget, long timeBudgetMillis) {
+        this.moveCosts = moveCosts;
+        this.moveBudget = moveBudget;
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * Find the sequence of the orders that delivers the most revenue within the move budget, every order's route
+     * and pickUp must already be set. Orders that don't fit are left at the end of the sequence.
+     * @param orders - the orders, their current order is the starting point of the search
+     * @return ArrayList<Order> the orders in the order they should be delivered
+     */
+    public ArrayList<Order> sequence(List<Order> orders) {
+        int n = orders.size();
+        if (n < 2) {
+            return new ArrayList<>(orders);
+        }
+        precompute(orders);
+        long deadline = System.nanoTime() + timeBudgetMillis * 1_000_000L;
+
+        int[] current = new int[n];
+        for (int i = 0; i < n; i++) {
+            current[i] = i;
+        }
+        localSearch(current, deadline);
+        int[] best = current.clone();
+        double bestScore = score(best);
+        double currentScore = bestScore;
+
+        // simulated annealing over the 2-opt and Or-opt neighbourhood, cooling with the steps taken
+        double initialTemperature = 0;
+        for (int p : price) {
+            initialTemperature = Math.max(initialTemperature, p);
+        }
+        int steps = ANNEALING_STEPS_PER_ORDER * n;
+        int[] candidate = new int[n];
+        for (int step = 0; step < steps; step++) {
+            if (step % STEPS_PER_CLOCK_CHECK == 0 && System.nanoTime() >= deadline) {
+                break;
+            }
+            double progress = (double) step / steps;
+            double temperature = initialTemperature * Math.pow(FINAL_TEMPERATURE / initialTemperature, progress);
+            System.arraycopy(current, 0, candidate, 0, n);
+            if (random.nextBoolean()) {
+                int i = random.nextInt(n);
+                int j = random.nextInt(n);
+                twoOpt(candidate, Math.min(i, j), Math.max(i, j));
+            } else {
+                int length = 1 + random.nextInt(Math.min(MAX_OR_OPT_LENGTH, n - 1));
+                int from = random.nextInt(n - length + 1);
+                int to = random.nextInt(n - length + 1);
+                orOpt(candidate, from, length, to);
+            }
+            double candidateScore = score(candidate);
+            double delta = candidateScore - currentScore;
+            if (delta >= 0 || random.nextDouble() < Math.exp(delta / temperature)) {
+                System.arraycopy(candidate, 0, current, 0, n);
+                currentScore = candidateScore;
+                if (currentScore > bestScore) {
+                    System.arraycopy(current, 0, best, 0, n);
+                    bestScore = currentScore;
+                }
+            }
+        }
+
+        ArrayList<Order> sequenced = new ArrayList<>();
+        for (int i : best) {
+            sequenced.add(orders.get(i));
+        }
+        return sequenced;
+    }
+
+    /**
+     * compute the move costs between every pair of stops once
+     */
+    private void precompute(List<Order> orders) {
+        int n = orders.size();
+        LongLat home = new LongLat(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE);
+        price = new int[n];
+        fromHome = new int[n];
+        toHome = new int[n];
+        within = new int[n];
+        between = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            Order order = orders.get(i);
+            price[i] = order.price;
+            LongLat first = order.route.get(0);
+            fromHome[i] = moveCosts.moves(home, first);
+            toHome[i] = moveCosts.moves(order.pickUp, home);
+            int moves = 0;
+            for (int k = 1; k < order.route.size(); k++) {
+                LongLat previous = order.route.get(k - 1);
+                LongLat stop = order.route.get(k);
+                // the route lists every stop twice, once to fly there and once to hover
+                moves += stop == previous ? 1 : moveCosts.moves(previous, stop);
+            }
+            within[i] = moves;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                between[i][j] = i == j ? 0 : moveCosts.moves(orders.get(i).pickUp, orders.get(j).route.get(0));
+            }
+        }
+    }
+
+    /**
+     * The revenue delivered by the sequence, with a tie break of less than a penny in favour of fewer moves
+     */
+    double score(int[] sequence) {
+        int used = 0;
+        int revenue = 0;
+        int previous = -1;
+        for (int order : sequence) {
+            int cost = (previous < 0 ? fromHome[order] : between[previous][order]) + within[order];
+            if (used + cost + toHome[order] > moveBudget) {
+                break;
+            }
+            used += cost;
+            revenue += price[order];
+            previous = order;
+        }
+        if (previous >= 0) {
+            used += toHome[previous];
+        }
+        return revenue - (double) used / (moveBudget + 1);
+    }
+
+    /**
+     * Apply improving 2-opt and Or-opt moves until none is left, or the deadline has passed
+     */
+    private void localSearch(int[] sequence, long deadline) {
+        int n = sequence.length;
+        int[] candidate = new int[n];
+        double currentScore = score(sequence);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 0; i < n - 1 && System.nanoTime() < deadline; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    System.arraycopy(sequence, 0, candidate, 0, n);
+                    twoOpt(candidate, i, j);
+                    double candidateScore = score(candidate);
+                    if (candidateScore > currentScore) {
+                        System.arraycopy(candidate, 0, sequence, 0, n);
+                        currentScore = candidateScore;
+                        improved = true;
+                    }
+                }
+            }
+            for (int length = 1; length <= Math.min(MAX_OR_OPT_LENGTH, n - 1); length++) {
+                for (int from = 0; from + length <= n && System.nanoTime() < deadline; from++) {
+                    for (int to = 0; to + length <= n; to++) {
+                        if (to == from) {
+                            continue;
+                        }
+                        System.arraycopy(sequence, 0, candidate, 0, n);
+                        orOpt(candidate, from, length, to);
+                        double candidateScore = score(candidate);
+                        if (candidateScore > currentScore) {
+                            System.arraycopy(candidate, 0, sequence, 0, n);
+                            currentScore = candidateScore;
+                            improved = true;
+                        }
+                    }
+                }
+            }
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * reverse the orders from position i to position j, both included
+     */
+    static void twoOpt(int[] sequence, int i, int j) {
+        while (i < j) {
+            int swap = sequence[i];
+            sequence[i] = sequence[j];
+            sequence[j] = swap;
+            i++;
+            j--;
+        }
+    }
+
+    /**
+     * move the run of length orders starting at position from, so that it starts at position to afterwards
+     */
+    static void orOpt(int[] sequence, int from, int length, int to) {
+        if (from == to) {
+            return;
+        }
+        int[] run = new int[length];
+        System.arraycopy(sequence, from, run, 0, length);
+        if (to < from) {
+            System.arraycopy(sequence, to, sequence, to + length, from - to);
+        } else {
+            System.arraycopy(sequence, from + length, sequence, from, to - from);
+        }
+        System.arraycopy(run, 0, sequence, to, length);
+    }
+}
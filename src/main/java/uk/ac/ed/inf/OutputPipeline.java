@@ -0,0 +1,331 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * OutputPipeline writes the results of a drone while it's still planning. As the listener of the drone's FlightTrace
+ * it turns every point into a flightpath row and every pick up hover into a deliveries row, and publishes them and
+ * the point itself to three bounded queues, each drained by a writer thread of its own into the table FLIGHTPATH,
+ * the table DELIVERIES and the geojson file. The writers take whatever has queued up at once, the table writers
+ * add it to a BatchWriter that sends a batch whenever it's full, and when a queue is full the planning waits for its
+ * writer, so the memory used stays bounded.
+ *
+ * The order number of a move is only known once the order it flies for is picked up, so the rows are labelled by a
+ * FlightLabeller, the same one Drone.flightPathLabels uses, and published as it labels them, which gives the same
+ * rows as Drone.flightPathInsertion. Closing the pipeline waits for every writer to finish. A writer that fails, for
+ * whatever reason, keeps taking its events off the queue until the end, so the planning never waits for it.
+ */
+public class OutputPipeline implements FlightListener, AutoCloseable {
+
+    /** The default number of events each queue holds before the planning has to wait */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** The most events a writer takes off its queue at once */
+    private static final int MAX_DRAIN = 512;
+
+    /**
+     * A row of one of the tables, added to the table's BatchWriter
+     */
+    private interface Row {
+        void addTo(BatchWriter writer) throws SQLException;
+    }
+
+    /**
+     * A move of the flight, a row of the table FLIGHTPATH once its order number is known
+     */
+    private static final class FlightpathRow implements Row {
+        String orderNo;
+        final double fromLongitude;
+        final double fromLatitude;
+        final int angle;
+        final double toLongitude;
+        final double toLatitude;
+
+        FlightpathRow(double fromLongitude, double fromLatitude, int angle, double toLongitude, double toLatitude) {
+            this.fromLongitude = fromLongitude;
+            this.fromLatitude = fromLatitude;
+            this.angle = angle;
+            this.toLongitude = toLongitude;
+            this.toLatitude = toLatitude;
+        }
+
+        @Override
+        public void addTo(BatchWriter writer) throws SQLException {
+            writer.addRow(orderNo, fromLongitude, fromLatitude, angle, toLongitude, toLatitude);
+        }
+    }
+
+    /**
+     * An order picked up, a row of the table DELIVERIES
+     */
+    private static final class DeliveryRow implements Row {
+        final String orderNo;
+        final String deliverTo;
+        final int price;
+
+        DeliveryRow(String orderNo, String deliverTo, int price) {
+            this.orderNo = orderNo;
+            this.deliverTo = deliverTo;
+            this.price = price;
+        }
+
+        @Override
+        public void addTo(BatchWriter writer) throws SQLException {
+            writer.addRow(orderNo, deliverTo, price);
+        }
+    }
+
+    /**
+     * A point of the flight, as FlightListener.pointAdded is told it
+     */
+    private static final class Point {
+        final double longitude;
+        final double latitude;
+        final int heading;
+        final int flags;
+
+        Point(double longitude, double latitude, int heading, int flags) {
+            this.longitude = longitude;
+            this.latitude = latitude;
+            this.heading = heading;
+            this.flags = flags;
+        }
+    }
+
+    /** The row put on a table's queue after the last one, telling its writer to finish */
+    private static final Row END_OF_ROWS = writer -> { };
+
+    /** The point put on the geojson queue after the last one, telling its writer to finish */
+    private static final Point END_OF_POINTS = new Point(0, 0, 0, 0);
+
+    /** the drone whose flight is written */
+    private final Drone drone;
+
+    /** rows of the table FLIGHTPATH waiting to be written */
+    private final ArrayBlockingQueue<Row> flightpathRows;
+
+    /** rows of the table DELIVERIES waiting to be written */
+    private final ArrayBlockingQueue<Row> deliveryRows;
+
+    /** points of the flight waiting to be written to the geojson file */
+    private final ArrayBlockingQueue<Point> geojsonPoints;
+
+    /** the writer threads */
+    private final ExecutorService writers = Executors.newFixedThreadPool(3);
+
+    /** completed once every writer has finished */
+    private final CompletableFuture<Void> completion;
+
+    /** labels the flightpath rows, made at the first point as the drone's orders are only sequenced by then */
+    private FlightLabeller<FlightpathRow> labeller;
+
+    /** true once a point has been added */
+    private boolean hasLast = false;
+    private double lastLongitude;
+    private double lastLatitude;
+
+    /** true once close() has run */
+    private boolean closed = false;
+
+    /**
+     * constructor OutputPipeline, starts the writers
+     * @param drone - the drone whose flight is written, the pipeline has to be the listener of its flightTrace
+     * @param database - database the tables FLIGHTPATH and DELIVERIES are written to
+     * @param geojson - writer of the geojson file, closed by the pipeline
+     */
+    public OutputPipeline(Drone drone, Database database, GeoJsonFlightWriter geojson) {
+        this(drone, database, geojson, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * constructor OutputPipeline, starts the writers
+     * @param drone - the drone whose flight is written, the pipeline has to be the listener of its flightTrace
+     * @param database - database the tables FLIGHTPATH and DELIVERIES are written to
+     * @param geojson - writer of the geojson file, closed by the pipeline
+     * @param capacity - number of events each queue holds before the planning has to wait
+     */
+    public OutputPipeline(Drone drone, Database database, GeoJsonFlightWriter geojson, int capacity) {
+        this.drone = drone;
+        flightpathRows = new ArrayBlockingQueue<>(capacity);
+        deliveryRows = new ArrayBlockingQueue<>(capacity);
+        geojsonPoints = new ArrayBlockingQueue<>(capacity);
+        completion = CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> writeRows(flightpathRows, database::flightpathWriter,
+                        Metrics.Phase.FLIGHTPATH_INSERTION), writers),
+                CompletableFuture.runAsync(() -> writeRows(deliveryRows, database::deliveriesWriter,
+                        Metrics.Phase.DELIVERIES_INSERTION), writers),
+                CompletableFuture.runAsync(() -> writePoints(geojsonPoints, geojson), writers));
+    }
+
+    /**
+     * Opens a BatchWriter on the writer's own thread
+     */
+    private interface WriterFactory {
+        BatchWriter open() throws SQLException;
+    }
+
+    @Override
+    public void pointAdded(double longitude, double latitude, int heading, int flags) {
+        put(geojsonPoints, new Point(longitude, latitude, heading, flags));
+        if (hasLast) {
+            addRow(new FlightpathRow(lastLongitude, lastLatitude, heading, longitude, latitude), flags);
+        } else {
+            labeller = new FlightLabeller<>(drone.orders, this::publish);
+        }
+        hasLast = true;
+        lastLongitude = longitude;
+        lastLatitude = latitude;
+    }
+
+    /**
+     * hand the flightpath row of a move to the labeller, and queue the deliveries row of the order it picks up
+     * @param flags - the FlightTrace flags of the point the move reaches
+     */
+    private void addRow(FlightpathRow row, int flags) {
+        Order order = labeller.add(row, (flags & FlightTrace.PICKUP) != 0);
+        if (order != null) {
+            order.isDelivered = true;
+            put(deliveryRows, new DeliveryRow(order.orderNo, order.deliverTo, order.price));
+        }
+    }
+
+    /**
+     * give the row its order number and queue it for the table FLIGHTPATH
+     */
+    private void publish(FlightpathRow row, String label) {
+        row.orderNo = label;
+        put(flightpathRows, row);
+    }
+
+    /**
+     * queue the event, waiting for room if the queue is full
+     */
+    private static <E> void put(ArrayBlockingQueue<E> queue, E event) {
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * the loop of a table's writer: add whatever has queued up to the BatchWriter, which sends a batch whenever it
+     * has enough rows, until the end of the rows, then commit. If the writer fails, the database or anything else,
+     * the rest of the rows are taken off the queue and dropped, so the planning never waits for a writer that has
+     * stopped.
+     * @param phase - the phase the time spent writing is recorded as
+     */
+    private static void writeRows(ArrayBlockingQueue<Row> queue, WriterFactory factory, Metrics.Phase phase) {
+        ArrayList<Row> batch = new ArrayList<>(MAX_DRAIN);
+        long busyNanos = 0;
+        boolean ended = false;
+        try (BatchWriter writer = factory.open()) {
+            while (!ended) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_DRAIN - 1);
+                long start = System.nanoTime();
+                for (Row row : batch) {
+                    if (row == END_OF_ROWS) {
+                        ended = true;
+                        writer.commit();
+                        break;
+                    }
+                    row.addTo(writer);
+                }
+                busyNanos += System.nanoTime() - start;
+                batch.clear();
+            }
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!ended) {
+                drain(queue, END_OF_ROWS);
+            }
+            Metrics.record(phase, busyNanos);
+        }
+    }
+
+    /**
+     * the loop of the geojson writer: write the points until the end of the points, then close the file. If the
+     * writer fails the rest of the points are taken off the queue and dropped, like the rows of a table.
+     */
+    private static void writePoints(ArrayBlockingQueue<Point> queue, GeoJsonFlightWriter geojson) {
+        ArrayList<Point> batch = new ArrayList<>(MAX_DRAIN);
+        boolean ended = false;
+        try (geojson) {
+            while (!ended) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_DRAIN - 1);
+                for (Point point : batch) {
+                    if (point == END_OF_POINTS) {
+                        ended = true;
+                        break;
+                    }
+                    geojson.pointAdded(point.longitude, point.latitude, point.heading, point.flags);
+                }
+                batch.clear();
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!ended) {
+                drain(queue, END_OF_POINTS);
+            }
+        }
+    }
+
+    /**
+     * take events off the queue and drop them until the given end event. An interrupted writer stops at once.
+     */
+    private static <E> void drain(ArrayBlockingQueue<E> queue, E end) {
+        try {
+            while (queue.take() != end) {
+                // dropped
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return CompletableFuture<Void> completed once every writer has finished, after close()
+     */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    /**
+     * publish the rows still held back as BACKHOME, tell the writers to finish and wait until they have. The writer
+     * threads are shut down even if a writer failed, so they never keep the JVM alive.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (labeller != null) {
+                labeller.finish();
+            }
+            put(flightpathRows, END_OF_ROWS);
+            put(deliveryRows, END_OF_ROWS);
+            put(geojsonPoints, END_OF_POINTS);
+            completion.join();
+        } finally {
+            writers.shutdown();
+        }
+    }
+}
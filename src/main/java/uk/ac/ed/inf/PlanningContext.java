@@ -0,0 +1,131 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * PlanningContext holds the inputs that are the same for every day and every drone of a run: the menus catalogue,
+ * the no fly zones, the landmarks, the three word locations and the moves between the stops. They are loaded from the
+ * web server once and are read-only afterwards apart from the caches, which are thread-safe, so a context can be
+ * shared by drones planning concurrently. The requests for the menus, the no fly zones and the landmarks are sent
+ * together, so loading takes as long as the slowest of them rather than all of them.
+ */
+public class PlanningContext {
+
+    /** the web server the inputs were loaded from */
+    public final WebServer server;
+
+    /** the menus, with their catalogue already parsed */
+    public final Menus menus;
+
+    /** the no fly zones, indexed for collision checks */
+    public final NoFlyZoneIndex noFlyZones;
+
+    /** landmark coords in langlat, used to fly around the no fly zones */
+    public final List<LongLat> landmarks;
+
+    /** resolves the three word locations of shops and pick up points */
+    public final WordCache wordCache;
+
+    /** the moves between the stops used for the route decisions */
+    public final MoveCosts moveCosts;
+
+    /** the moves back to Appleton Tower from anywhere in the confinement area, null to estimate them instead */
+    public final HomeCostField homeCosts;
+
+    /**
+     * constructor PlanningContext, loads everything from the web server at the given port
+     * @param webPort - the port where the web server is running
+     */
+    public PlanningContext(String webPort) {
+        this(new Menus(webPort), new WebServer(webPort));
+    }
+
+    /**
+     * constructor PlanningContext, loads everything through the given menus and web server
+     * @param menus - menus used for the catalogue
+     * @param server - WebServer we get the no fly zones, landmarks and three word locations from
+     */
+    public PlanningContext(Menus menus, WebServer server) {
+        this(join(loadAsync(menus, server)));
+    }
+
+    /**
+     * constructor PlanningContext, copying a loaded context
+     */
+    private PlanningContext(PlanningContext loaded) {
+        this(loaded.server, loaded.menus, loaded.noFlyZones, loaded.landmarks, loaded.wordCache, loaded.moveCosts,
+                loaded.homeCosts);
+    }
+
+    /**
+     * constructor PlanningContext, from inputs that are already loaded
+     * @param server - the web server the inputs came from
+     * @param menus - menus used for the catalogue
+     * @param noFlyZones - the no fly zones, indexed for collision checks
+     * @param landmarks - landmark coords in langlat
+     * @param wordCache - resolves the three word locations
+     */
+    public PlanningContext(WebServer server, Menus menus, NoFlyZoneIndex noFlyZones, List<LongLat> landmarks,
+                           WordCache wordCache) {
+        this(server, menus, noFlyZones, landmarks, wordCache, MoveCosts.STRAIGHT_LINE, null);
+    }
+
+    /**
+     * constructor PlanningContext, from inputs that are already loaded
+     * @param moveCosts - the moves between the stops used for the route decisions
+     * @param homeCosts - the moves back to Appleton Tower, null to estimate them instead
+     */
+    private PlanningContext(WebServer server, Menus menus, NoFlyZoneIndex noFlyZones, List<LongLat> landmarks,
+                            WordCache wordCache, MoveCosts moveCosts, HomeCostField homeCosts) {
+        this.server = server;
+        this.menus = menus;
+        this.noFlyZones = noFlyZones;
+        this.landmarks = Collections.unmodifiableList(landmarks);
+        this.wordCache = wordCache;
+        this.moveCosts = moveCosts;
+        this.homeCosts = homeCosts;
+    }
+
+    /**
+     * keep what the caches learned during the run for the next one, called once the run is planned
+     */
+    public void saveCaches() {
+        wordCache.save();
+        moveCosts.save();
+    }
+
+    /**
+     * send the requests for the menus, the no fly zones and the landmarks all at once, and build the context
+     * as soon as the last of them has arrived. The caller can carry on, e.g. preparing the database, meanwhile.
+     * @param menus - menus used for the catalogue
+     * @param server - WebServer we get the no fly zones, landmarks and three word locations from
+     * @return CompletableFuture<PlanningContext> completed with the loaded context
+     */
+    public static CompletableFuture<PlanningContext> loadAsync(Menus menus, WebServer server) {
+        CompletableFuture<MenuCatalog> catalog = menus.getCatalogAsync();
+        CompletableFuture<NoFlyZoneIndex> noFlyZones = server.getNoFlyZonePolygonsAsync()
+                .thenApply(NoFlyZoneIndex::new);
+        CompletableFuture<ArrayList<LongLat>> landmarks = server.readLandMarksAsync();
+        return noFlyZones.thenCombine(landmarks, (zones, marks) -> new PlanningContext(server, menus, zones, marks,
+                        new WordCache(server), new MoveCostMatrix(zones, marks), new HomeCostField(zones)))
+                .thenCombine(catalog, (context, loaded) -> context);
+    }
+
+    /**
+     * wait for the context to be loaded, ending the run if the web server couldn't be reached
+     * @return the loaded context
+     */
+    public static PlanningContext join(CompletableFuture<PlanningContext> loading) {
+        try {
+            return loading.join();
+        } catch (CompletionException e) {
+            System.err.println(e.getCause().getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+}
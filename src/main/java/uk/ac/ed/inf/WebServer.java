@@ -11,32 +11,59 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * WebServer initiates an HttpClient, create http requests and get information for landmarks/no fly zones/ three words locations/
- *  off the server
+ *  off the server. Requests can also be sent asynchronously, so the independent requests of a run are all in flight
+ *  at once, at most MAX_CONCURRENT_REQUESTS of them at a time: the others wait in a queue, never the caller, and are
+ *  sent as the ones in flight complete.
  */
 public class WebServer {
 
     /** Initialising one Http Client that's shared between all HttpRequests*/
     private static final HttpClient client = HttpClient.newHttpClient();
 
+    /** The maximum number of requests in flight at once, across every WebServer */
+    public static final int MAX_CONCURRENT_REQUESTS = 8;
+
+    /** the sends of the requests waiting for one in flight to complete, in the order they were asked for */
+    private static final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+
+    /** number of requests in flight, guarded by waiting */
+    private static int inFlight = 0;
+
     /** The port where the web server is running.*/
     public final String port;
 
     /** A list of landmark coords in langlat*/
     public ArrayList<LongLat> landmarks = new ArrayList<>();
 
+    /** the snapshot the server's data is read from instead of sending requests, null to always send them */
+    public final WebSnapshot snapshot;
+
     /**
      * Constructor WebServer
      *
      * @param port The port where the web server is running.
      */
     public WebServer(String port){
+        this(port, null);
+    }
+
+    /**
+     * Constructor WebServer, answering from a snapshot of the server where it can
+     *
+     * @param port The port where the web server is running, for the three word locations missing from the snapshot.
+     * @param snapshot The snapshot of the server, null to always send requests
+     */
+    public WebServer(String port, WebSnapshot snapshot){
         this.port = port;
+        this.snapshot = snapshot;
     }
 
 
@@ -77,11 +104,9 @@ public class WebServer {
      * @return  HttpResponse<String> response
      */
     public HttpResponse<String> createResponse(String urlString){
-        HttpRequest request;
         HttpResponse<String> response = null;
         try{
-            request = HttpRequest.newBuilder().uri(URI.create(urlString)).build();
-            response = client.send(request, BodyHandlers.ofString());
+            response = createResponseAsync(urlString).join();
         }catch (Exception e) {
             System.err.println(e.getMessage());
             System.exit(1);
@@ -89,21 +114,133 @@ public class WebServer {
         return response;
     }
 
+    /**
+     * send the request without waiting for the response, or queue it while MAX_CONCURRENT_REQUESTS are in flight so
+     * it's sent as soon as one of them completes. The caller never waits.
+     * @return CompletableFuture<HttpResponse<String>> completed with the response, or exceptionally if it failed
+     */
+    public CompletableFuture<HttpResponse<String>> createResponseAsync(String urlString){
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(urlString)).build();
+        CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+        Runnable send = () -> {
+            Metrics.increment(Metrics.Counter.HTTP_REQUESTS);
+            try {
+                client.sendAsync(request, BodyHandlers.ofString()).whenComplete((response, e) -> {
+                    sendNext();
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else {
+                        result.complete(response);
+                    }
+                });
+            } catch (RuntimeException e) {
+                sendNext();
+                result.completeExceptionally(e);
+            }
+        };
+        synchronized (waiting) {
+            if (inFlight >= MAX_CONCURRENT_REQUESTS) {
+                waiting.add(send);
+                return result;
+            }
+            inFlight++;
+        }
+        send.run();
+        return result;
+    }
+
+    /**
+     * a request in flight completed, send the first waiting request in its place
+     */
+    private static void sendNext(){
+        Runnable next;
+        synchronized (waiting) {
+            next = waiting.poll();
+            if (next == null) {
+                inFlight--;
+                return;
+            }
+        }
+        next.run();
+    }
+
+    /**
+     * get the body of a response, ending the run if the server didn't answer with 200
+     * @return the body of the response
+     */
+    public String bodyOf(HttpResponse<String> response){
+        // A statusCode of 200 means the url string is syntactically and semantically correct,
+        // so we can then use response.body()
+        if(response.statusCode() == 200){
+            return response.body();
+        // A statusCode of 404 means the url string may be syntactically but is semantically incorrect,
+        // we will need to double-check that url
+        }else if(response.statusCode() == 404) {
+            System.err.println("URL Not Found: Unable to connect to localhost at port " + port + "." +
+                    "\nStatus Code: 404");
+        }else {
+            System.err.println("Fatal error: Unable to connect to localhost at port " + port + ".");
+        }
+        System.exit(1);
+        return null;
+    }
+
+    /**
+     * @return CompletableFuture<ArrayList<LongLat>> of the landmarks in langlat
+     */
+    public CompletableFuture<ArrayList<LongLat>> readLandMarksAsync(){
+        if(snapshot != null){
+            return CompletableFuture.completedFuture(snapshot.landmarks());
+        }
+        return createResponseAsync(getURLStringForLandmarks()).thenApply(response -> parseLandMarks(bodyOf(response)));
+    }
+
+    /**
+     * @return CompletableFuture<ArrayList<ArrayList<Line2D>>> of the edges of every no fly zone polygon
+     */
+    public CompletableFuture<ArrayList<ArrayList<Line2D>>> getNoFlyZonePolygonsAsync(){
+        if(snapshot != null){
+            return CompletableFuture.completedFuture(snapshot.noFlyZonePolygons());
+        }
+        return createResponseAsync(getURLStringForNoFlyZones())
+                .thenApply(response -> parseNoFlyZonePolygons(bodyOf(response)));
+    }
+
     /**
      * get landmark coords from server to the landmarks list
      */
     public void getLandMarks(){
+        landmarks.addAll(readLandMarks());
+    }
+
+    /**
+     * read the landmark coords from the server, without touching the landmarks list
+     * @return ArrayList<LongLat> the landmarks in langlat
+     */
+    public ArrayList<LongLat> readLandMarks(){
+        if(snapshot != null){
+            return snapshot.landmarks();
+        }
+        return parseLandMarks(bodyOf(createResponse(getURLStringForLandmarks())));
+    }
+
+    /**
+     * parse the landmarks geojson
+     * @return ArrayList<LongLat> the landmarks in langlat
+     */
+    private static ArrayList<LongLat> parseLandMarks(String geojson){
+        ArrayList<LongLat> landmarkList = new ArrayList<>();
         ArrayList<Feature> lfLandmarks = new ArrayList<>();
-        HttpResponse<String> response = createResponse(getURLStringForLandmarks());
-        FeatureCollection fc = FeatureCollection.fromJson(response.body());
+        FeatureCollection fc = FeatureCollection.fromJson(geojson);
         lfLandmarks = (ArrayList<Feature>) fc.features();
         for(Feature feature: Objects.requireNonNull(lfLandmarks)) {
             Point point = (Point) feature.geometry();
             double lng = Objects.requireNonNull(point).coordinates().get(0);
             double lat = Objects.requireNonNull(point).coordinates().get(1);
             LongLat landmark = new LongLat(lng, lat);
-            landmarks.add(landmark);
+            landmarkList.add(landmark);
         }
+        return landmarkList;
     }
 
     /**
@@ -112,12 +249,35 @@ public class WebServer {
      */
     public ArrayList<Line2D> getNoFlyZones(){
         ArrayList<Line2D> line2DArrayList = new ArrayList<>();
-        HttpResponse<String> response = createResponse(getURLStringForNoFlyZones());
-        FeatureCollection featureCollection = FeatureCollection.fromJson(response.body());
+        for(ArrayList<Line2D> polygon : getNoFlyZonePolygons()){
+            line2DArrayList.addAll(polygon);
+        }
+        return line2DArrayList;
+    }
+
+    /**
+     * Get no fly zones from the server, keeping the edges of each polygon together
+     * @return ArrayList<ArrayList<Line2D>> the edges of every no fly zone polygon in Line2D
+     */
+    public ArrayList<ArrayList<Line2D>> getNoFlyZonePolygons(){
+        if(snapshot != null){
+            return snapshot.noFlyZonePolygons();
+        }
+        return parseNoFlyZonePolygons(bodyOf(createResponse(getURLStringForNoFlyZones())));
+    }
+
+    /**
+     * parse the no fly zones geojson, keeping the edges of each polygon together
+     * @return ArrayList<ArrayList<Line2D>> the edges of every no fly zone polygon in Line2D
+     */
+    private static ArrayList<ArrayList<Line2D>> parseNoFlyZonePolygons(String geojson){
+        ArrayList<ArrayList<Line2D>> polygons = new ArrayList<>();
+        FeatureCollection featureCollection = FeatureCollection.fromJson(geojson);
         List<Feature> features = featureCollection.features();
         try{
             for(Feature feature: Objects.requireNonNull(features)){
                 Polygon polygon = (Polygon)feature.geometry();
+                ArrayList<Line2D> line2DArrayList = new ArrayList<>();
                 for(List<Point> listPoint: Objects.requireNonNull(polygon).coordinates()){
                     ArrayList<Point2D> point2DS = new ArrayList<>();
                     for (Point point:listPoint){
@@ -135,12 +295,12 @@ public class WebServer {
                         line2DArrayList.add(line2D);
                     }
                 }
+                polygons.add(line2DArrayList);
             }
         }catch(Exception e){
             e.printStackTrace();
             System.exit(1);
         }
-        return line2DArrayList;
+        return polygons;
     }
 }
-
@@ -0,0 +1,370 @@
+package uk.ac.ed.inf;
+
+import java.awt.geom.Line2D;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * WebSnapshot is everything the runs read from the web server, compiled into one binary file: the menus, the edges
+ * of the no fly zones, the landmarks and a table of three word locations. The file is memory-mapped when it's
+ * loaded, and a WebServer given the snapshot answers from it instead of sending requests, as do the Menus, WordParser
+ * and WordCache using that WebServer, so a run can start without the web server and without parsing any json.
+ * Three word locations missing from the snapshot are still asked from the web server.
+ *
+ * The file is big-endian: a header with the magic, the version and the offsets of the four sections, then
+ * the menus as (name, location, items of (item, pence)) per shop, the polygons as their edges' x1, y1, x2, y2,
+ * the landmarks as longitude, latitude pairs, and the words as an index of entry offsets sorted by word followed
+ * by the (word, longitude, latitude) entries. Strings are an unsigned short length followed by UTF-8.
+ */
+public class WebSnapshot {
+
+    /** The first int of every snapshot file */
+    private static final int MAGIC = 0x44534e50;
+
+    /** The version of the file layout */
+    private static final int VERSION = 1;
+
+    /** The number of bytes of the header */
+    private static final int HEADER_SIZE = 6 * Integer.BYTES;
+
+    /** the mapped file, only ever read with absolute gets so it can be shared between threads */
+    private final ByteBuffer buffer;
+
+    /** the offsets of the four sections */
+    private final int menusOffset;
+    private final int zonesOffset;
+    private final int landmarksOffset;
+    private final int wordsOffset;
+
+    /** number of three word locations in the table */
+    private final int wordCount;
+
+    /**
+     * constructor WebSnapshot, over the bytes of a snapshot file
+     */
+    private WebSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("not a web server snapshot of version " + VERSION);
+        }
+        this.menusOffset = buffer.getInt(8);
+        this.zonesOffset = buffer.getInt(12);
+        this.landmarksOffset = buffer.getInt(16);
+        this.wordsOffset = buffer.getInt(20);
+        this.wordCount = buffer.getInt(wordsOffset);
+    }
+
+    /**
+     * memory-map a snapshot file
+     * @param file - the snapshot written by export()
+     * @return WebSnapshot reading from the mapped file
+     */
+    public static WebSnapshot load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new WebSnapshot(mapped);
+        }
+    }
+
+    /**
+     * @return ArrayList<MenusJson> the menus, the same as Menus.parseMenus() gets from the web server
+     */
+    public ArrayList<Menus.MenusJson> menus() {
+        int[] at = {menusOffset};
+        int shops = readInt(at);
+        ArrayList<Menus.MenusJson> menus = new ArrayList<>(shops);
+        for (int s = 0; s < shops; s++) {
+            Menus.MenusJson shop = new Menus.MenusJson();
+            shop.name = readString(at);
+            shop.location = readString(at);
+            int items = readInt(at);
+            shop.menu = new ArrayList<>(items);
+            for (int i = 0; i < items; i++) {
+                Menus.MenusJson.Item item = new Menus.MenusJson.Item();
+                item.item = readString(at);
+                item.pence = readInt(at);
+                shop.menu.add(item);
+            }
+            menus.add(shop);
+        }
+        return menus;
+    }
+
+    /**
+     * @return ArrayList<ArrayList<Line2D>> the edges of every no fly zone polygon
+     */
+    public ArrayList<ArrayList<Line2D>> noFlyZonePolygons() {
+        int[] at = {zonesOffset};
+        int polygonCount = readInt(at);
+        ArrayList<ArrayList<Line2D>> polygons = new ArrayList<>(polygonCount);
+        for (int p = 0; p < polygonCount; p++) {
+            int edges = readInt(at);
+            ArrayList<Line2D> polygon = new ArrayList<>(edges);
+            for (int e = 0; e < edges; e++) {
+                polygon.add(new Line2D.Double(readDouble(at), readDouble(at), readDouble(at), readDouble(at)));
+            }
+            polygons.add(polygon);
+        }
+        return polygons;
+    }
+
+    /**
+     * @return ArrayList<LongLat> the landmarks in langlat
+     */
+    public ArrayList<LongLat> landmarks() {
+        int[] at = {landmarksOffset};
+        int count = readInt(at);
+        ArrayList<LongLat> landmarks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            landmarks.add(new LongLat(readDouble(at), readDouble(at)));
+        }
+        return landmarks;
+    }
+
+    /**
+     * look the three word location up with a binary search of the mapped word index
+     * @param threeWord - three word location, e.g. "army.monks.grapes"
+     * @return {longitude, latitude} of the location, or null if it isn't in the snapshot
+     */
+    public double[] word(String threeWord) {
+        byte[] key = threeWord.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = wordCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = buffer.getInt(wordsOffset + Integer.BYTES * (1 + middle));
+            int compared = compare(entry, key);
+            if (compared < 0) {
+                low = middle + 1;
+            } else if (compared > 0) {
+                high = middle - 1;
+            } else {
+                int coordinates = entry + Short.BYTES + key.length;
+                return new double[]{buffer.getDouble(coordinates), buffer.getDouble(coordinates + Double.BYTES)};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of three word locations in the snapshot
+     */
+    public int wordCount() {
+        return wordCount;
+    }
+
+    /**
+     * compare the word of the entry at the given offset with the key, byte by byte as unsigned values
+     */
+    private int compare(int entry, byte[] key) {
+        int length = Short.toUnsignedInt(buffer.getShort(entry));
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int difference = Byte.toUnsignedInt(buffer.get(entry + Short.BYTES + i)) - Byte.toUnsignedInt(key[i]);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    /**
+     * @return the int at at[0], moving at[0] past it
+     */
+    private int readInt(int[] at) {
+        int value = buffer.getInt(at[0]);
+        at[0] += Integer.BYTES;
+        return value;
+    }
+
+    /**
+     * @return the double at at[0], moving at[0] past it
+     */
+    private double readDouble(int[] at) {
+        double value = buffer.getDouble(at[0]);
+        at[0] += Double.BYTES;
+        return value;
+    }
+
+    /**
+     * @return the string at at[0], moving at[0] past it
+     */
+    private String readString(int[] at) {
+        int length = Short.toUnsignedInt(buffer.getShort(at[0]));
+        byte[] bytes = new byte[length];
+        buffer.get(at[0] + Short.BYTES, bytes);
+        at[0] += Short.BYTES + length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * write a snapshot file
+     * @param file - the snapshot file, replaced if it exists
+     * @param menus - the menus, as returned by Menus.parseMenus()
+     * @param polygons - the edges of every no fly zone polygon
+     * @param landmarks - the landmarks in langlat
+     * @param words - three word locations to their {longitude, latitude}
+     */
+    public static void export(Path file, List<Menus.MenusJson> menus, List<? extends List<Line2D>> polygons,
+                              List<LongLat> landmarks, Map<String, double[]> words) throws IOException {
+        ByteArrayBuilder out = new ByteArrayBuilder();
+        out.position(HEADER_SIZE);
+
+        int menusOffset = out.size();
+        out.putInt(menus.size());
+        for (Menus.MenusJson shop : menus) {
+            out.putString(shop.name);
+            out.putString(shop.location);
+            out.putInt(shop.menu.size());
+            for (Menus.MenusJson.Item item : shop.menu) {
+                out.putString(item.item);
+                out.putInt(item.pence);
+            }
+        }
+
+        int zonesOffset = out.size();
+        out.putInt(polygons.size());
+        for (List<Line2D> polygon : polygons) {
+            out.putInt(polygon.size());
+            for (Line2D edge : polygon) {
+                out.putDouble(edge.getX1());
+                out.putDouble(edge.getY1());
+                out.putDouble(edge.getX2());
+                out.putDouble(edge.getY2());
+            }
+        }
+
+        int landmarksOffset = out.size();
+        out.putInt(landmarks.size());
+        for (LongLat landmark : landmarks) {
+            out.putDouble(landmark.longitude);
+            out.putDouble(landmark.latitude);
+        }
+
+        // the index is sorted by the words' UTF-8 bytes, the order word() searches in
+        TreeMap<byte[], double[]> sorted = new TreeMap<>(Arrays::compareUnsigned);
+        for (Map.Entry<String, double[]> entry : words.entrySet()) {
+            sorted.put(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue());
+        }
+        int wordsOffset = out.size();
+        out.putInt(sorted.size());
+        int index = out.size();
+        out.position(index + Integer.BYTES * sorted.size());
+        for (Map.Entry<byte[], double[]> entry : sorted.entrySet()) {
+            out.putIntAt(index, out.size());
+            index += Integer.BYTES;
+            out.putBytes(entry.getKey());
+            out.putDouble(entry.getValue()[0]);
+            out.putDouble(entry.getValue()[1]);
+        }
+
+        out.putIntAt(0, MAGIC);
+        out.putIntAt(4, VERSION);
+        out.putIntAt(8, menusOffset);
+        out.putIntAt(12, zonesOffset);
+        out.putIntAt(16, landmarksOffset);
+        out.putIntAt(20, wordsOffset);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = out.toByteBuffer();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * write a snapshot of the web server: its menus, no fly zones and landmarks, and the three word locations of
+     * every shop together with every location already in the word cache of earlier runs.
+     * Usage: webPort snapshotFile
+     */
+    public static void main(String[] args) {
+        String webPort = args[0];
+        Path file = Paths.get(args[1]);
+        WebServer server = new WebServer(webPort);
+        Menus menus = new Menus(server);
+        ArrayList<Menus.MenusJson> menusList = menus.parseMenus();
+        WordCache wordCache = new WordCache(server);
+        ArrayList<String> shops = new ArrayList<>();
+        for (Menus.MenusJson shop : menusList) {
+            shops.add(shop.location);
+        }
+        wordCache.prefetch(shops);
+        try {
+            export(file, menusList, server.getNoFlyZonePolygons(), server.readLandMarks(),
+                    wordCache.knownLocations());
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * ByteArrayBuilder is a growable big-endian byte array the snapshot is written into
+     */
+    private static final class ByteArrayBuilder {
+        private ByteBuffer bytes = ByteBuffer.allocate(1 << 12);
+
+        int size() {
+            return bytes.position();
+        }
+
+        void position(int position) {
+            ensure(position - bytes.position());
+            bytes.position(position);
+        }
+
+        void putInt(int value) {
+            ensure(Integer.BYTES);
+            bytes.putInt(value);
+        }
+
+        void putIntAt(int index, int value) {
+            bytes.putInt(index, value);
+        }
+
+        void putDouble(double value) {
+            ensure(Double.BYTES);
+            bytes.putDouble(value);
+        }
+
+        void putString(String value) {
+            putBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void putBytes(byte[] value) {
+            if (value.length > 0xffff) {
+                throw new IllegalArgumentException("string longer than 65535 bytes");
+            }
+            ensure(Short.BYTES + value.length);
+            bytes.putShort((short) value.length);
+            bytes.put(value);
+        }
+
+        /**
+         * grow the array so another n bytes fit
+         */
+        private void ensure(int n) {
+            if (bytes.remaining() < n) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(bytes.capacity() * 2, bytes.position() + n));
+                bytes.flip();
+                grown.put(bytes);
+                bytes = grown;
+            }
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(bytes.array(), 0, bytes.position());
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package uk.ac.ed.inf;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WordCache resolves three word locations to LongLat coordinates, and remembers them so the web server is only
+ * asked once for every location. Every location is kept in memory in a concurrent map, loaded from an on-disk store
+ * that survives between runs, and the misses of a whole day can be prefetched concurrently, their requests all sent
+ * at once and bounded by WebServer.MAX_CONCURRENT_REQUESTS.
+ * The cache is safe to share between threads.
+ */
+public class WordCache {
+
+    /** The default file the resolved locations are kept in between runs */
+    public static final String DEFAULT_STORE_FILE = "words-cache.csv";
+
+    /** The port where the web server is running.*/
+    public final String port;
+
+    /** The web server the locations are resolved with */
+    private final WebServer server;
+
+    /** The file the resolved locations are persisted to */
+    private final Path storeFile;
+
+    /** every location in the on-disk store, including the ones resolved during this run */
+    private final ConcurrentHashMap<String, double[]> store = new ConcurrentHashMap<>();
+
+    /** true if locations were resolved since the store was last saved */
+    private volatile boolean dirty = false;
+
+    /**
+     * Constructor WordCache, using the default store file in the working directory
+     * @param port The port where the web server is running.
+     */
+    public WordCache(String port) {
+        this(port, Paths.get(DEFAULT_STORE_FILE));
+    }
+
+    /**
+     * Constructor WordCache
+     * @param port The port where the web server is running.
+     * @param storeFile The file the resolved locations are persisted to
+     */
+    public WordCache(String port, Path storeFile) {
+        this(new WebServer(port), storeFile);
+    }
+
+    /**
+     * Constructor WordCache, using the default store file in the working directory
+     * @param server The web server, or its snapshot, the locations are resolved with
+     */
+    public WordCache(WebServer server) {
+        this(server, Paths.get(DEFAULT_STORE_FILE));
+    }
+
+    /**
+     * Constructor WordCache
+     * @param server The web server, or its snapshot, the locations are resolved with
+     * @param storeFile The file the resolved locations are persisted to
+     */
+    public WordCache(WebServer server, Path storeFile) {
+        this.port = server.port;
+        this.server = server;
+        this.storeFile = storeFile;
+        load();
+    }
+
+    /**
+     * read the on-disk store, a missing or unreadable store simply starts the cache cold
+     */
+    private void load() {
+        if (!Files.exists(storeFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(storeFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length == 3) {
+                    store.put(fields[0], new double[]{Double.parseDouble(fields[1]), Double.parseDouble(fields[2])});
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Ignoring unreadable word cache " + storeFile + ": " + e.getMessage());
+            store.clear();
+        }
+    }
+
+    /**
+     * write the store to disk if anything new was resolved, replacing the old file in one move
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Path tmp = storeFile.resolveSibling(storeFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, double[]> entry : store.entrySet()) {
+                writer.write(entry.getKey() + "," + entry.getValue()[0] + "," + entry.getValue()[1]);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(tmp, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Resolve a three word location, only calling the web server if it's not in the store.
+     * A new LongLat is returned every time, so callers can tell their points apart.
+     * @param threeWord - three word location, e.g. "army.monks.grapes"
+     * @return LongLat the coordinates of the location
+     */
+    public LongLat resolve(String threeWord) {
+        double[] coordinates = lookup(threeWord);
+        return new LongLat(coordinates[0], coordinates[1]);
+    }
+
+    /**
+     * @return {longitude, latitude} of the location, fetched from the web server on a miss
+     */
+    private double[] lookup(String threeWord) {
+        double[] coordinates = store.get(threeWord);
+        if (coordinates == null) {
+            coordinates = fetch(threeWord);
+            store.put(threeWord, coordinates);
+            dirty = true;
+        }
+        return coordinates;
+    }
+
+    /**
+     * @return {longitude, latitude} of the location parsed from the web server
+     */
+    private double[] fetch(String threeWord) {
+        WordParser.Word word = new WordParser(server).parseWord(threeWord);
+        return new double[]{word.coordinates.lng, word.coordinates.lat};
+    }
+
+    /**
+     * @return every location known to the cache, as {longitude, latitude}
+     */
+    public Map<String, double[]> knownLocations() {
+        return Collections.unmodifiableMap(store);
+    }
+
+    /**
+     * @return true if the location is already known, without calling the web server
+     */
+    public boolean contains(String threeWord) {
+        return store.containsKey(threeWord);
+    }
+
+    /**
+     * Resolve all the given locations that aren't cached yet with concurrent requests,
+     * then persist the store so the next run starts warm.
+     * @param threeWords - three word locations that will be needed
+     */
+    public void prefetch(Collection<String> threeWords) {
+        ArrayList<String> misses = new ArrayList<>();
+        for (String threeWord : new LinkedHashSet<>(threeWords)) {
+            if (!contains(threeWord)) {
+                misses.add(threeWord);
+            }
+        }
+        if (misses.isEmpty()) {
+            return;
+        }
+        ArrayList<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (String threeWord : misses) {
+            futures.add(new WordParser(server).parseWordAsync(threeWord).thenAccept(word -> {
+                store.put(threeWord, new double[]{word.coordinates.lng, word.coordinates.lat});
+                dirty = true;
+            }));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            e.printStackTrace();
+        }
+        save();
+    }
+}
@@ -2,6 +2,7 @@ package uk.ac.ed.inf;
 
 import com.google.gson.Gson;
 import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * calls web server for the three word locations and pack the corresponding longitude and latitude as coordinates
@@ -11,6 +12,9 @@ public class WordParser {
     /** The port where the web server is running.*/
     public final String port;
 
+    /** The web server the locations are read from */
+    private final WebServer server;
+
     /** THold the jsonListString.*/
     private String jsonListString;
 
@@ -19,7 +23,16 @@ public class WordParser {
      * @param port The port where the web server is running.
      */
     public WordParser(String port){
-        this.port = port;
+        this(new WebServer(port));
+    }
+
+    /**
+     * Constructor WordParser, reading the locations from the given web server's snapshot where it can
+     * @param server The web server the locations are read from
+     */
+    public WordParser(WebServer server){
+        this.port = server.port;
+        this.server = server;
     }
 
     /**
@@ -39,20 +52,13 @@ public class WordParser {
      * @return Word word, the parsed three word locations with valid coordinates
      */
     public Word parseWord(String threeWord){
-        Word word = null;
-        WebServer webServer = new WebServer(port);
+        Word word = fromSnapshot(threeWord);
+        if(word != null){
+            return word;
+        }
         try{
-            HttpResponse<String> response = webServer.createResponse(webServer.getURLStringForThreeWordsLocation(threeWord));
-            if(response.statusCode() == 200){
-                this.jsonListString = response.body();
-            }else if(response.statusCode() == 404) {
-                System.err.println("URL Not Found: Unable to connect to localhost at port " + port + "." +
-                        "\nStatus Code: 404");
-                System.exit(1);
-            }else {
-                System.err.println("Fatal error: Unable to connect to localhost at port " + port + ".");
-                System.exit(1);
-            }
+            HttpResponse<String> response = server.createResponse(server.getURLStringForThreeWordsLocation(threeWord));
+            this.jsonListString = server.bodyOf(response);
         }catch (Exception e){
             e.printStackTrace();
             System.exit(1);
@@ -60,4 +66,35 @@ public class WordParser {
         word = new Gson().fromJson(jsonListString, Word.class);
         return word;
     }
+
+    /**
+     * calls web server for the three word locations without waiting for the answer
+     * @return CompletableFuture<Word> completed with the parsed three word locations
+     */
+    public CompletableFuture<Word> parseWordAsync(String threeWord){
+        Word word = fromSnapshot(threeWord);
+        if(word != null){
+            return CompletableFuture.completedFuture(word);
+        }
+        return server.createResponseAsync(server.getURLStringForThreeWordsLocation(threeWord))
+                .thenApply(response -> new Gson().fromJson(server.bodyOf(response), Word.class));
+    }
+
+    /**
+     * @return Word the three word location from the web server's snapshot, or null if it isn't there
+     */
+    private Word fromSnapshot(String threeWord){
+        if(server.snapshot == null){
+            return null;
+        }
+        double[] coordinates = server.snapshot.word(threeWord);
+        if(coordinates == null){
+            return null;
+        }
+        Word word = new Word();
+        word.coordinates = new Word.Coordinates();
+        word.coordinates.lng = coordinates[0];
+        word.coordinates.lat = coordinates[1];
+        return word;
+    }
 }
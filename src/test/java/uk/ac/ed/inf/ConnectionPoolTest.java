@@ -0,0 +1,27 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * Checks that a connection handed back twice is only pooled once, on an in-memory Derby database.
+ */
+public class ConnectionPoolTest {
+
+    @Test
+    public void closingTwiceDoesNotShareTheConnection() throws SQLException {
+        try (ConnectionPool pool = new ConnectionPool("jdbc:derby:memory:poolTest;create=true", 2)) {
+            ConnectionPool.PooledConnection first = pool.borrow();
+            first.close();
+            first.close();
+            ConnectionPool.PooledConnection a = pool.borrow();
+            ConnectionPool.PooledConnection b = pool.borrow();
+            assertNotSame(a.connection, b.connection);
+            a.close();
+            b.close();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package uk.ac.ed.inf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that planPath keeps to the move budget when the stops need more moves than it has: the flight turns home
+ * in time and still gets there, even when the moves home it's told are far too few.
+ */
+public class DroneTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** a square no fly zone in the middle of the confinement area, so the legs and the way home go round it */
+    private final NoFlyZoneIndex noFlyZones = new NoFlyZoneIndex(List.of(List.<Line2D>of(
+            new Line2D.Double(-3.1895, 55.9438, -3.1880, 55.9438),
+            new Line2D.Double(-3.1880, 55.9438, -3.1880, 55.9452),
+            new Line2D.Double(-3.1880, 55.9452, -3.1895, 55.9452),
+            new Line2D.Double(-3.1895, 55.9452, -3.1895, 55.9438))));
+
+    @Test
+    public void stopsBeyondTheBudgetTurnTheFlightHomeInTime() {
+        Drone drone = drone(new HomeCostField(noFlyZones));
+        drone.planPath();
+        assertWithinBudgetAndHome(drone);
+    }
+
+    @Test
+    public void movesHomeThatAreTooFewDontBreakTheBudget() {
+        // a field promising the way home is always free, so only the way home planned for real keeps to the budget
+        Drone drone = drone(new HomeCostField(noFlyZones) {
+            @Override
+            public int movesHome(double longitude, double latitude) {
+                return 0;
+            }
+        });
+        drone.planPath();
+        assertWithinBudgetAndHome(drone);
+    }
+
+    /**
+     * check the flight has no more rows than the budget, stopped before its last stop and ended at Appleton Tower
+     */
+    private static void assertWithinBudgetAndHome(Drone drone) {
+        FlightTrace trace = drone.flightTrace;
+        int rows = trace.size() - 1;
+        assertTrue(rows + " rows", rows <= Drone.MAXIMUM_NO_OF_MOVES);
+        // the stops need far more moves than the budget, so the flight used most of it
+        assertTrue(rows + " rows", rows > Drone.MAXIMUM_NO_OF_MOVES - 100);
+        int lastStop = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            if (trace.heading(i) == LongLat.HOVERING_ANGLE) {
+                lastStop = Math.max(lastStop, trace.waypoint(i));
+            }
+        }
+        assertTrue("reached stop " + lastStop, lastStop < drone.path.size() - 2);
+        assertTrue(LongLat.closeTo(trace.lastLongitude(), trace.lastLatitude(),
+                new LongLat(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE)));
+    }
+
+    /**
+     * @return a drone whose path crosses the confinement area from west to east and back, hovering at every stop,
+     * far more often than the move budget allows
+     */
+    private Drone drone(HomeCostField homeCosts) {
+        WebServer server = new WebServer("0");
+        PlanningContext context = new PlanningContext(server, new Menus(server), noFlyZones, new ArrayList<>(),
+                new WordCache(server, folder.getRoot().toPath().resolve(WordCache.DEFAULT_STORE_FILE)));
+        Drone drone = new Drone(context, null, new ArrayList<>());
+        drone.setHomeCosts(homeCosts);
+        drone.path = new ArrayList<>();
+        drone.pickUpStops = new ArrayList<>();
+        drone.path.add(new LongLat(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE));
+        drone.pickUpStops.add(false);
+        for (int n = 0; n < 40; n++) {
+            LongLat stop = n % 2 == 0 ? new LongLat(-3.1920, 55.9432 + 0.0001 * (n % 5))
+                    : new LongLat(-3.1850, 55.9458 - 0.0001 * (n % 5));
+            drone.path.add(stop);
+            drone.path.add(stop);
+            drone.pickUpStops.add(false);
+            drone.pickUpStops.add(true);
+        }
+        drone.path.add(new LongLat(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE));
+        drone.pickUpStops.add(false);
+        return drone;
+    }
+}
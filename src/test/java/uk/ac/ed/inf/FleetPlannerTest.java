@@ -0,0 +1,66 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks that the clustering of the fleet leaves no drone without orders, even when several orders share a shop and
+ * a pick up point and there are as many drones as places or more.
+ */
+public class FleetPlannerTest {
+
+    @Test
+    public void moreClustersThanPlacesLeavesNoClusterEmpty() {
+        // 5 orders at 2 places, and 7 orders at 3 places
+        assertNoneEmpty(orders(5, 2), 4);
+        assertNoneEmpty(orders(5, 2), 5);
+        assertNoneEmpty(orders(7, 3), 3);
+        assertNoneEmpty(orders(7, 3), 6);
+    }
+
+    @Test
+    public void ordersAllAtOnePlaceGiveEveryClusterAnOrder() {
+        assertNoneEmpty(orders(6, 1), 6);
+        assertNoneEmpty(orders(6, 1), 2);
+    }
+
+    /**
+     * cluster the orders into k clusters and check every order lands in exactly one of them, none of them empty
+     */
+    private static void assertNoneEmpty(ArrayList<Order> orders, int k) {
+        ArrayList<ArrayList<Order>> clusters = FleetPlanner.cluster(orders, k);
+        assertEquals(k, clusters.size());
+        int total = 0;
+        for (ArrayList<Order> cluster : clusters) {
+            assertFalse(orders.size() + " orders in " + k + " clusters", cluster.isEmpty());
+            total += cluster.size();
+        }
+        assertEquals(orders.size(), total);
+    }
+
+    /**
+     * @return n orders spread in turn over the given number of places, each with its shop and pick up point there
+     */
+    private static ArrayList<Order> orders(int n, int places) {
+        ArrayList<Order> orders = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int place = i % places;
+            LongLat shop = new LongLat(-3.1900 + 0.001 * place, 55.9440);
+            LongLat pickUp = new LongLat(-3.1880 + 0.001 * place, 55.9450);
+            Order order = new Order(String.format("%08x", i), "2022-01-01", "s0000000", "deliver.to.here",
+                    new ArrayList<>(), 500);
+            order.route = new ArrayList<>();
+            order.route.add(shop);
+            order.route.add(shop);
+            order.route.add(pickUp);
+            order.route.add(pickUp);
+            order.pickUp = pickUp;
+            orders.add(order);
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,145 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Round trips flights through FlightCodec: the replayed trace must have the same coordinates, headings and hovers,
+ * and the order numbers of the rows must come back in their runs.
+ */
+public class FlightCodecTest {
+
+    @Test
+    public void roundTripsMovesHoversAndLabels() {
+        FlightTrace trace = new FlightTrace();
+        trace.start(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE);
+        move(trace, 0, 3);
+        move(trace, 350, 2);
+        trace.hover(FlightTrace.SHOP, 2);
+        trace.hover(FlightTrace.SHOP, 3);
+        move(trace, 90, 4);
+        trace.hover(FlightTrace.PICKUP, 5);
+        move(trace, 180, 1);
+        move(trace, 270, 5);
+        String[] labels = new String[trace.size() - 1];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = i < 9 ? "a0000001" : i < 13 ? "1c2b3d4e" : "BACKHOME";
+        }
+
+        FlightCodec.Flight flight = FlightCodec.decode(FlightCodec.encode(trace, labels));
+
+        assertEquals(trace.size(), flight.trace.size());
+        for (int i = 0; i < trace.size(); i++) {
+            assertEquals("longitude " + i, trace.longitude(i), flight.trace.longitude(i), 0);
+            assertEquals("latitude " + i, trace.latitude(i), flight.trace.latitude(i), 0);
+            assertEquals("heading " + i, trace.heading(i), flight.trace.heading(i));
+            assertEquals("pick up " + i, trace.isPickUp(i), flight.trace.isPickUp(i));
+        }
+        assertArrayEquals(labels, flight.labels);
+    }
+
+    @Test
+    public void roundTripsAFlightThatNeverLeaves() {
+        FlightTrace trace = new FlightTrace();
+        trace.start(-3.1880, 55.9450);
+
+        FlightCodec.Flight flight = FlightCodec.decode(FlightCodec.encode(trace, new String[0]));
+
+        assertEquals(1, flight.trace.size());
+        assertEquals(-3.1880, flight.trace.longitude(0), 0);
+        assertEquals(55.9450, flight.trace.latitude(0), 0);
+        assertEquals(0, flight.labels.length);
+    }
+
+    @Test
+    public void decodesAnEmptyTraceAsItsStartAtAppleton() {
+        FlightCodec.Flight flight = FlightCodec.decode(FlightCodec.encode(new FlightTrace(), new String[0]));
+
+        assertEquals(1, flight.trace.size());
+        assertEquals(LongLat.APPLETON_LONGITUDE, flight.trace.longitude(0), 0);
+        assertEquals(LongLat.APPLETON_LATITUDE, flight.trace.latitude(0), 0);
+        assertEquals(0, flight.labels.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsACodeAbovePickUp() {
+        FlightCodec.decode(withLastCode((byte) (FlightCodec.PICK_UP_CODE + 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANegativeCode() {
+        FlightCodec.decode(withLastCode((byte) 0xff));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsATruncatedFlight() {
+        byte[] encoded = withLastCode((byte) 0);
+        FlightCodec.decode(Arrays.copyOf(encoded, encoded.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAHeadingRunLongerThanAFlight() {
+        byte[] encoded = withLastCode((byte) 0);
+        // the length of the only heading run becomes 2^31 - 1 in five varint bytes
+        byte[] hostile = Arrays.copyOf(encoded, encoded.length + 4);
+        hostile[encoded.length - 1] = (byte) 0xff;
+        hostile[encoded.length] = (byte) 0xff;
+        hostile[encoded.length + 1] = (byte) 0xff;
+        hostile[encoded.length + 2] = (byte) 0xff;
+        hostile[encoded.length + 3] = (byte) 0x07;
+        FlightCodec.decode(hostile);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsALabelRunLongerThanAFlight() {
+        FlightTrace trace = new FlightTrace();
+        trace.start(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE);
+        move(trace, 0, 1);
+        byte[] encoded = FlightCodec.encode(trace, new String[]{"a0000001"});
+        // magic, version, start, one label run of an 8 byte order number, then its one byte row count
+        int rowCountAt = 4 + 4 + 16 + 1 + 2 + 8;
+        assertEquals(1, encoded[rowCountAt]);
+        // the row count becomes one more than a flight can have, in two varint bytes
+        byte[] hostile = new byte[encoded.length + 1];
+        System.arraycopy(encoded, 0, hostile, 0, rowCountAt);
+        hostile[rowCountAt] = (byte) ((FlightCodec.MAX_ROWS + 1) & 0x7f | 0x80);
+        hostile[rowCountAt + 1] = (byte) ((FlightCodec.MAX_ROWS + 1) >>> 7);
+        System.arraycopy(encoded, rowCountAt + 1, hostile, rowCountAt + 2, encoded.length - rowCountAt - 1);
+        FlightCodec.decode(hostile);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLabelsThatDontMatchTheRows() {
+        FlightTrace trace = new FlightTrace();
+        trace.start(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE);
+        move(trace, 0, 2);
+        FlightCodec.encode(trace, new String[]{"a0000001"});
+    }
+
+    /**
+     * @return an encoded one move flight with the code of its only heading run replaced
+     */
+    private static byte[] withLastCode(byte code) {
+        FlightTrace trace = new FlightTrace();
+        trace.start(LongLat.APPLETON_LONGITUDE, LongLat.APPLETON_LATITUDE);
+        move(trace, 0, 1);
+        byte[] encoded = FlightCodec.encode(trace, new String[]{"a0000001"});
+        // the flight ends with its only heading run, a code byte and a one byte length
+        encoded[encoded.length - 2] = code;
+        return encoded;
+    }
+
+    /**
+     * add the given number of moves in the heading to the trace
+     */
+    private static void move(FlightTrace trace, int heading, int moves) {
+        for (int n = 0; n < moves; n++) {
+            trace.move(LongLat.nextLongitude(trace.lastLongitude(), heading),
+                    LongLat.nextLatitude(trace.lastLatitude(), heading), heading);
+        }
+    }
+}
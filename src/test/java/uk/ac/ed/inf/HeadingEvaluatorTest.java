@@ -0,0 +1,101 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the 36 lane bitmask of HeadingEvaluator against testing every move on its own with Line2D over all the
+ * edges and with NoFlyZoneIndex.intersects, the way Drone.isNoFlyZone does.
+ */
+public class HeadingEvaluatorTest {
+
+    /** The length of a move, in degrees */
+    private static final double MOVE = LongLat.DISTANCE_TOLERANCE;
+
+    /** the no fly zones: an axis aligned square, a triangle and a thin sliver, all in the confinement area */
+    private final List<List<Line2D>> polygons = List.of(
+            polygon(-3.1900, 55.9440, -3.1890, 55.9440, -3.1890, 55.9448, -3.1900, 55.9448),
+            polygon(-3.1880, 55.9450, -3.1868, 55.9452, -3.1875, 55.9459),
+            polygon(-3.1910, 55.9455, -3.1909, 55.9455, -3.1909, 55.9458, -3.1910, 55.9458));
+
+    private final NoFlyZoneIndex noFlyZones = new NoFlyZoneIndex(polygons);
+
+    private final HeadingEvaluator evaluator = new HeadingEvaluator(noFlyZones);
+
+    @Test
+    public void randomPositionsAgreeWithLine2D() {
+        Random random = new Random(2022);
+        for (int n = 0; n < 20_000; n++) {
+            // near the zones, where the moves get blocked
+            double longitude = -3.1915 + random.nextDouble() * 0.0052;
+            double latitude = 55.9436 + random.nextDouble() * 0.0028;
+            assertAgrees(longitude, latitude);
+        }
+    }
+
+    @Test
+    public void positionsTouchingTheZonesAgreeWithLine2D() {
+        for (List<Line2D> polygon : polygons) {
+            for (Line2D edge : polygon) {
+                // at the corners, half way along the edges and one move away from a corner in every heading, where
+                // moves touch an edge or run along it and the mask has to fall back to Line2D
+                assertAgrees(edge.getX1(), edge.getY1());
+                assertAgrees((edge.getX1() + edge.getX2()) / 2, (edge.getY1() + edge.getY2()) / 2);
+                for (int angle = 0; angle < 360; angle += 10) {
+                    assertAgrees(LongLat.nextLongitude(edge.getX1(), angle),
+                            LongLat.nextLatitude(edge.getY1(), angle));
+                }
+            }
+        }
+        // a move along the bottom edge of the square, and one ending on its line
+        assertAgrees(-3.1900 - MOVE / 2, 55.9440);
+        assertAgrees(-3.1900 - MOVE, 55.9440);
+        assertAgrees(-3.1895, 55.9440 - MOVE);
+    }
+
+    @Test
+    public void noZonesLeaveEveryHeadingLegal() {
+        HeadingEvaluator empty = new HeadingEvaluator(new NoFlyZoneIndex(new ArrayList<List<Line2D>>()));
+        assertEquals(HeadingEvaluator.ALL_HEADINGS, empty.legalHeadings(-3.1890, 55.9445));
+    }
+
+    /**
+     * compare the mask of the position with testing each of its moves one by one
+     */
+    private void assertAgrees(double longitude, double latitude) {
+        long mask = evaluator.legalHeadings(longitude, latitude);
+        for (int angle = 0; angle < 360; angle += 10) {
+            double nextLongitude = LongLat.nextLongitude(longitude, angle);
+            double nextLatitude = LongLat.nextLatitude(latitude, angle);
+            boolean crossed = false;
+            for (List<Line2D> polygon : polygons) {
+                for (Line2D edge : polygon) {
+                    crossed |= edge.intersectsLine(longitude, latitude, nextLongitude, nextLatitude);
+                }
+            }
+            String move = "move " + angle + " from " + longitude + ", " + latitude;
+            assertEquals(move, !crossed, HeadingEvaluator.isLegal(mask, angle));
+            assertEquals(move, crossed, noFlyZones.intersects(longitude, latitude, nextLongitude, nextLatitude));
+        }
+    }
+
+    /**
+     * @return the edges of the closed polygon through the given longitude, latitude pairs
+     */
+    private static List<Line2D> polygon(double... coordinates) {
+        List<Line2D> edges = new ArrayList<>();
+        int corners = coordinates.length / 2;
+        for (int i = 0; i < corners; i++) {
+            int j = (i + 1) % corners;
+            edges.add(new Line2D.Double(coordinates[2 * i], coordinates[2 * i + 1],
+                    coordinates[2 * j], coordinates[2 * j + 1]));
+        }
+        return edges;
+    }
+}
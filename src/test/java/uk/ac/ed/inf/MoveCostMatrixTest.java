@@ -0,0 +1,70 @@
+package uk.ac.ed.inf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.geom.Line2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that preparing more points only adds the pairs with the new ones, and that the cache file is only written
+ * by save() and read back by the next matrix.
+ */
+public class MoveCostMatrixTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** a square no fly zone between the points */
+    private final NoFlyZoneIndex noFlyZones = new NoFlyZoneIndex(List.of(List.<Line2D>of(
+            new Line2D.Double(-3.1900, 55.9440, -3.1890, 55.9440),
+            new Line2D.Double(-3.1890, 55.9440, -3.1890, 55.9448),
+            new Line2D.Double(-3.1890, 55.9448, -3.1900, 55.9448),
+            new Line2D.Double(-3.1900, 55.9448, -3.1900, 55.9440))));
+
+    @Test
+    public void preparingANewPointAddsOnlyItsPairsAndSaveKeepsThem() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        MoveCostMatrix matrix = new MoveCostMatrix(noFlyZones, new ArrayList<>(), directory, 2);
+        ArrayList<LongLat> points = new ArrayList<>(List.of(new LongLat(-3.1910, 55.9444),
+                new LongLat(-3.1880, 55.9444), new LongLat(-3.1895, 55.9455)));
+        // a duplicate point is only planned once
+        points.add(new LongLat(-3.1910, 55.9444));
+        matrix.prepare(points);
+        assertEquals(9, matrix.size());
+        int around = matrix.moves(points.get(0), points.get(1));
+        assertTrue(around > MoveCosts.STRAIGHT_LINE.moves(points.get(0), points.get(1)));
+
+        points.add(new LongLat(-3.1895, 55.9432));
+        matrix.prepare(points);
+        assertEquals(16, matrix.size());
+        assertEquals(around, matrix.moves(points.get(0), points.get(1)));
+        assertFalse(hasCacheFile(directory));
+
+        matrix.save();
+        assertTrue(hasCacheFile(directory));
+        MoveCostMatrix reloaded = new MoveCostMatrix(noFlyZones, new ArrayList<>(), directory, 2);
+        assertEquals(16, reloaded.size());
+        assertEquals(around, reloaded.moves(points.get(0), points.get(1)));
+    }
+
+    /**
+     * @return true if the directory holds a cache file
+     */
+    private static boolean hasCacheFile(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.anyMatch(file -> file.getFileName().toString().startsWith(MoveCostMatrix.CACHE_FILE_PREFIX)
+                    && file.getFileName().toString().endsWith(".bin"));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the order sequencing is repeatable: the same orders give the same sequence every time.
+ */
+public class OrderSequencerTest {
+
+    /** A time cap far above what the search needs, so only its steps decide when it stops */
+    private static final long TIME_CAP_MILLIS = 60_000;
+
+    @Test
+    public void sameOrdersGiveTheSameSequence() {
+        for (int n : new int[]{2, 12, 40}) {
+            ArrayList<String> first = sequence(orders(n));
+            ArrayList<String> second = sequence(orders(n));
+            assertEquals(n + " orders", first, second);
+            assertEquals(n, first.size());
+        }
+    }
+
+    /**
+     * @return the order numbers in the order the sequencer puts the orders
+     */
+    private static ArrayList<String> sequence(ArrayList<Order> orders) {
+        OrderSequencer sequencer = new OrderSequencer(MoveCosts.STRAIGHT_LINE, Drone.MAXIMUM_NO_OF_MOVES,
+                TIME_CAP_MILLIS);
+        ArrayList<String> orderNos = new ArrayList<>();
+        for (Order order : sequencer.sequence(orders)) {
+            orderNos.add(order.orderNo);
+        }
+        return orderNos;
+    }
+
+    /**
+     * @return n orders with one or two shops and a pick up point in the confinement area, more than the move budget
+     * can deliver once there are enough of them
+     */
+    private static ArrayList<Order> orders(int n) {
+        Random random = new Random(n);
+        ArrayList<Order> orders = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Order order = new Order(String.format("%08x", i), "2022-01-01", "s0000000", "deliver.to.here",
+                    new ArrayList<>(), 100 + random.nextInt(2000));
+            order.route = new ArrayList<>();
+            for (int shops = 1 + random.nextInt(2); shops > 0; shops--) {
+                LongLat shop = randomPoint(random);
+                order.route.add(shop);
+                order.route.add(shop);
+            }
+            order.pickUp = randomPoint(random);
+            order.route.add(order.pickUp);
+            order.route.add(order.pickUp);
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    /**
+     * @return a point in the confinement area
+     */
+    private static LongLat randomPoint(Random random) {
+        return new LongLat(
+                LongLat.WESTMOST_LONGITUDE + random.nextDouble() * (LongLat.EASTMOST_LONGITUDE - LongLat.WESTMOST_LONGITUDE),
+                LongLat.SOUTHMOST_LATITUDE + random.nextDouble() * (LongLat.NORTHMOST_LATITUDE - LongLat.SOUTHMOST_LATITUDE));
+    }
+}
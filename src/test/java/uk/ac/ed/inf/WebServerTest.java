@@ -0,0 +1,83 @@
+package uk.ac.ed.inf;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that sending more requests than WebServer.MAX_CONCURRENT_REQUESTS never blocks the caller, against a local
+ * server that holds every answer back until the test lets it go.
+ */
+public class WebServerTest {
+
+    /** lets the held back answers go */
+    private final CountDownLatch answer = new CountDownLatch(1);
+
+    /** the most requests the local server was answering at once */
+    private final AtomicInteger mostAtOnce = new AtomicInteger();
+
+    private final AtomicInteger atOnce = new AtomicInteger();
+
+    private HttpServer httpServer;
+
+    @Before
+    public void startServer() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/", exchange -> {
+            mostAtOnce.accumulateAndGet(atOnce.incrementAndGet(), Math::max);
+            try {
+                answer.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            atOnce.decrementAndGet();
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        httpServer.setExecutor(Executors.newCachedThreadPool());
+        httpServer.start();
+    }
+
+    @After
+    public void stopServer() {
+        httpServer.stop(0);
+    }
+
+    @Test
+    public void moreRequestsThanTheLimitDontBlockTheCaller() {
+        WebServer server = new WebServer(String.valueOf(httpServer.getAddress().getPort()));
+        ArrayList<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 3 * WebServer.MAX_CONCURRENT_REQUESTS; i++) {
+            responses.add(server.createResponseAsync(server.getURLStringForMenus()));
+        }
+        // every request was handed over while none of them could have been answered
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertFalse(response.isDone());
+        }
+        answer.countDown();
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals("ok", server.bodyOf(response.join()));
+        }
+        assertTrue(mostAtOnce.get() <= WebServer.MAX_CONCURRENT_REQUESTS);
+    }
+}